@@ -0,0 +1,59 @@
+package src;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the grid operations every solver leans on: checking lines and the whole grid,
+ * copying the grid, and starting a move in the undo log.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+    @Benchmark
+    public boolean isSolved(PuzzleState state) {
+        return state.solved.isSolved();
+    }
+
+    @Benchmark
+    public int isLineSolved(PuzzleState state) {
+        Nonogram puzzle = state.solved;
+        CellState[][] grid = puzzle.getGrid();
+        int solvedRows = 0;
+        for (int i = 0; i < grid.length; i++) {
+            if (puzzle.isLineSolved(grid[i], puzzle.getRowConstraints()[i])) {
+                solvedRows++;
+            }
+        }
+        return solvedRows;
+    }
+
+    @Benchmark
+    public CellState[][] getGridCopy(PuzzleState state) {
+        return state.solved.getGridCopy();
+    }
+
+    @Benchmark
+    public Nonogram copy(PuzzleState state) {
+        return state.solved.copy();
+    }
+
+    /**
+     * Starts a move and undoes it straight away, so the undo log doesn't grow between calls.
+     */
+    @Benchmark
+    public boolean saveState(PuzzleState state) {
+        state.solved.saveState();
+        return state.solved.undo();
+    }
+}
@@ -0,0 +1,108 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks generating every fill of a line by backtracking, merging the fills, and the line solver
+ * that gives the same merged line without generating them, across clue shapes:
+ * one long block, many short blocks, alternating colours, and a line with some cells already known.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineFillBenchmark {
+    @Param({"20", "30"})
+    public int length;
+
+    @Param({"one-block", "short-blocks", "two-colours", "partly-known"})
+    public String shape;
+
+    private BlockConstraint[] constraints;
+    private CellState[] line;
+    private List<CellState[]> fills;
+    private Guesser guesser;
+    private Solver solver;
+    private LineSolver lineSolver;
+
+    @Setup
+    public void setUp() {
+        line = new CellState[length];
+        Arrays.fill(line, CellState.UNKNOWN);
+        List<BlockConstraint> blocks = new ArrayList<>();
+        switch (shape) {
+            case "one-block":
+                blocks.add(new BlockConstraint(length / 2, CellState.COLOUR_1));
+                break;
+            case "short-blocks":
+                for (int b = 0; b < length / 5; b++) {
+                    blocks.add(new BlockConstraint(2, CellState.COLOUR_1));
+                }
+                break;
+            case "two-colours":
+                for (int b = 0; b < length / 4; b++) {
+                    blocks.add(new BlockConstraint(2, b % 2 == 0 ? CellState.COLOUR_1 : CellState.COLOUR_2));
+                }
+                break;
+            case "partly-known":
+                for (int b = 0; b < length / 5; b++) {
+                    blocks.add(new BlockConstraint(2, CellState.COLOUR_1));
+                }
+                line[0] = CellState.COLOUR_1;
+                line[length / 2] = CellState.EMPTY;
+                line[length - 1] = CellState.EMPTY;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown clue shape " + shape);
+        }
+        constraints = blocks.toArray(new BlockConstraint[0]);
+
+        // The puzzle only gives the guesser and solver something to belong to
+        BlockConstraint[][] rows = {constraints};
+        BlockConstraint[][] columns = new BlockConstraint[length][0];
+        Nonogram puzzle = new Nonogram("Line", rows, columns, 1, length);
+        guesser = new Guesser(puzzle);
+        solver = new Solver(puzzle);
+        lineSolver = new LineSolver();
+        fills = backtrackFill();
+    }
+
+    @Benchmark
+    public List<CellState[]> backtrackFill() {
+        List<CellState[]> result = new ArrayList<>();
+        guesser.backtrackFill(result, new ArrayList<>(), constraints, 0, 0, line);
+        return result;
+    }
+
+    @Benchmark
+    public CellState[] mergeLineFills() {
+        return solver.mergeLineFills(fills);
+    }
+
+    @Benchmark
+    public CellState[] lineSolver() {
+        return lineSolver.solve(constraints, line);
+    }
+
+    @Benchmark
+    public long countFills() {
+        return lineSolver.countFills(constraints, line);
+    }
+}
@@ -0,0 +1,45 @@
+package src;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading puzzle files, and saving and loading the moves made on a puzzle.
+ * The files are small enough to stay in the OS's cache, so this mostly measures the JSON handling.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PuzzleIoBenchmark {
+    @Benchmark
+    public Nonogram loadPuzzle(PuzzleState state) throws IOException {
+        return new PuzzleLoader().loadPuzzle(state.file.toString());
+    }
+
+    @Benchmark
+    public Nonogram loadPuzzleStreaming(PuzzleState state) throws IOException {
+        return new StreamingPuzzleLoader().loadPuzzle(state.file.toString());
+    }
+
+    @Benchmark
+    public void saveMoves(PuzzleState state) throws IOException {
+        state.solved.saveMoves(state.movesFile.toString());
+    }
+
+    @Benchmark
+    public Nonogram loadMoves(PuzzleState state) throws IOException {
+        Nonogram puzzle = state.unsolved.copy();
+        puzzle.loadMoves(state.movesFile.toString());
+        return puzzle;
+    }
+}
@@ -0,0 +1,74 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A puzzle to benchmark: every well formed file in puzzles/ and ourpuzzles/, and large random puzzles.
+ * A random puzzle is named random-ROWSxCOLUMNS, and is made by PuzzleGenerator from a seeded random grid which is about 80% filled.
+ * Line solving alone finishes these, so setting them up stays quick however big they are; sparser or two colour
+ * random grids this size leave the guesser searching for minutes. It is also written to a temporary file,
+ * so that loading it can be measured too.
+ * The malformed files in ourpuzzles/ (incorrectJson1, noCount and so on) are left out, as they can't be loaded.
+ */
+@State(Scope.Benchmark)
+public class PuzzleState {
+    @Param({"puzzles/blanks_smiler.json", "puzzles/cat.json", "puzzles/checks.json", "puzzles/colour_cat.json",
+            "puzzles/colour_cat_face.json", "puzzles/colour_umberella.json", "puzzles/colour_wink.json",
+            "puzzles/horse.json", "puzzles/house.json", "puzzles/invader.json", "puzzles/multi_checks.json",
+            "puzzles/player.json", "puzzles/smiler.json", "puzzles/umberella.json", "puzzles/unsolvable_smiler.json",
+            "ourpuzzles/allBlack.json", "ourpuzzles/huge.json", "ourpuzzles/platypus.json",
+            "random-100x100", "random-300x300"})
+    public String puzzle;
+
+    Path file; // The puzzle's JSON file
+    Path movesFile; // A temporary file holding the solved grid, as written by saveMoves
+    Nonogram unsolved; // The puzzle as loaded, with an empty grid
+    Nonogram solved; // The puzzle after the guesser has finished with it, which may not be fully solved
+    private boolean generated;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        generated = puzzle.startsWith("random-");
+        if (generated) {
+            String[] size = puzzle.substring("random-".length()).split("x");
+            unsolved = randomPuzzle(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+            file = Files.createTempFile("benchmark", ".json");
+            new PuzzleWriter().writePuzzle(unsolved, file.toString());
+        } else {
+            file = Path.of(puzzle);
+            unsolved = new PuzzleLoader().loadPuzzle(puzzle);
+        }
+
+        solved = unsolved.copy();
+        new Guesser(solved).solve();
+        movesFile = Files.createTempFile("benchmark", "_moves.json");
+        solved.saveMoves(movesFile.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(movesFile);
+        if (generated) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Makes a random puzzle from a grid about 80% filled, the same for every run.
+     */
+    private static Nonogram randomPuzzle(int rows, int columns) {
+        PuzzleGenerator generator = new PuzzleGenerator(1006);
+        generator.setSize(rows, columns);
+        generator.setDensity(0.8);
+        return generator.generate();
+    }
+}
@@ -0,0 +1,29 @@
+package src;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks solving a puzzle from an empty grid with the guesser, as the Solve button does:
+ * deduction, then probing, then guessing if the puzzle needs it. Each solve starts from a fresh copy of the puzzle.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolveBenchmark {
+    @Benchmark
+    public SolveStatus guesserSolve(PuzzleState state) {
+        Guesser guesser = new Guesser(state.unsolved.copy());
+        guesser.solve();
+        return guesser.getStatus();
+    }
+}
@@ -0,0 +1,26 @@
+#!/bin/bash
+
+# The JMH jars are downloaded from Maven Central the first time, into benchmarks/lib, rather than kept in the repository
+JMH_VERSION=1.37
+MAVEN=https://repo1.maven.org/maven2
+mkdir -p benchmarks/lib
+for jar in \
+    org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar \
+    org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar \
+    net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar \
+    org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar; do
+    if [ ! -f "benchmarks/lib/$(basename $jar)" ]; then
+        curl -fsSL -o "benchmarks/lib/$(basename $jar)" "$MAVEN/$jar" || exit 1
+    fi
+done
+
+# Compile the game and the benchmarks together, letting JMH generate its harness code
+rm -rf benchmarks/out
+PROCESSOR_PATH=$(ls benchmarks/lib/*.jar | tr '\n' ':')
+javac -cp "lib/*:benchmarks/lib/*" -processorpath "$PROCESSOR_PATH" \
+    -processor org.openjdk.jmh.generators.BenchmarkProcessor \
+    -d benchmarks/out src/**.java benchmarks/src/**.java || exit 1
+
+# Report throughput and average time, with the allocation rate from the GC profiler.
+# Any JMH options can be added, for example a benchmark name pattern or -p puzzle=puzzles/cat.json
+java -cp "lib/*:benchmarks/lib/*:benchmarks/out" org.openjdk.jmh.Main -prof gc "$@"
@@ -0,0 +1,302 @@
+package src;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Solves many puzzle files without the GUI, on a fixed number of worker threads, and writes a line for each
+ * puzzle with how the solve ended, how long it took, how many guesses it made, the most copies of the grid it
+ * held at once, and the grid it ended on. Lines are written as the solves finish, so they may not be in the
+ * order the files were given. Each solve runs on one thread, so the workers can all be kept busy.
+ * Nothing here opens a window, and the JVM is told it is headless, so it can run on servers without a display.
+ *
+ * A grid is written one row after another, separated by '/', with '.' for an empty cell, '?' for an unknown
+ * cell and 1 to 4 for the colours.
+ *
+ * Usage: java -cp "lib/*":out src.BatchSolver [--threads N] [--format csv|json] [--output file]
+ *            [--time-limit ms] [--max-guesses N] puzzle-or-directory-or-glob...
+ */
+public class BatchSolver {
+    private static final String[] CSV_COLUMNS = {"file", "name", "status", "millis", "guesses", "peakGridCopies",
+            "grid", "error"};
+
+    private final int threads;
+    private final SolveOptions options;
+
+    /**
+     * @param threads The number of puzzles to solve at once, at least 1.
+     * @param options The options for every solve. Each solve gets its own copy, so the time limit is per puzzle.
+     */
+    public BatchSolver(int threads, SolveOptions options) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+        }
+        this.threads = threads;
+        this.options = options;
+    }
+
+    /**
+     * Solves every puzzle file, writing a line for each one as it finishes.
+     *
+     * @param files  The puzzle files to solve.
+     * @param format How to write the lines.
+     * @param out    Where to write the lines, which is flushed after each one.
+     * @return the number of puzzles which were solved
+     * @throws InterruptedException if the thread is interrupted while waiting for the solves
+     */
+    public int solveAll(List<Path> files, Format format, PrintWriter out) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new WorkerFactory());
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        for (Path file : files) {
+            completion.submit(() -> solve(file));
+        }
+        int solved = 0;
+        try {
+            if (format == Format.CSV) {
+                out.println(String.join(",", CSV_COLUMNS));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                Result result;
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("A solve failed", e.getCause());
+                }
+                if (result.solveResult != null && result.solveResult.isSolved()) {
+                    solved++;
+                }
+                out.println(format == Format.CSV ? result.toCsv() : result.toJson().toString());
+                out.flush();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return solved;
+    }
+
+    /**
+     * Loads and solves one puzzle file. A file that can't be loaded, or whose solve fails,
+     * gives a result with an error instead of a status, so the rest of the batch carries on.
+     */
+    private Result solve(Path file) {
+        Nonogram puzzle;
+        try {
+            puzzle = new PuzzleLoader().loadPuzzle(file.toString());
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            return new Result(file, null, null, null, e.getMessage());
+        }
+        SolveOptions solveOptions = new SolveOptions();
+        solveOptions.setMaxGuesses(options.getMaxGuesses());
+        solveOptions.setTimeLimitMillis(options.getTimeLimitMillis());
+        SolveResult solveResult;
+        try {
+            solveResult = new Guesser(puzzle).solve(solveOptions);
+        } catch (RuntimeException e) {
+            return new Result(file, null, null, null, "The solver failed: " + e);
+        }
+        return new Result(file, puzzle.getName(), solveResult, puzzle.getGrid(), null);
+    }
+
+    /**
+     * Finds the puzzle files named by an argument: a file, every .json file in a directory,
+     * or every file matching a glob such as puzzles/colour_*.json (quoted so the shell leaves it alone).
+     *
+     * @param argument The file, directory or glob.
+     * @return the files found, sorted by path
+     * @throws IOException if a directory can't be read
+     */
+    public static List<Path> findPuzzles(String argument) throws IOException {
+        int wildcard = firstWildcard(argument);
+        if (wildcard < 0) {
+            Path path = Paths.get(argument);
+            if (!Files.isDirectory(path)) {
+                return List.of(path);
+            }
+            try (Stream<Path> listing = Files.list(path)) {
+                return listing.filter(file -> file.toString().endsWith(".json")).sorted().collect(Collectors.toList());
+            }
+        }
+        // Walk from the last folder before the first wildcard, matching the whole glob against each path found
+        int folderEnd = Math.max(argument.lastIndexOf('/', wildcard), argument.lastIndexOf(File.separatorChar, wildcard));
+        Path root = Paths.get(folderEnd < 0 ? "" : argument.substring(0, folderEnd + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + argument);
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile).filter(matcher::matches).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Gets the index of the first wildcard character in a glob, or -1 if it has none.
+     */
+    private static int firstWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            if ("*?[{".indexOf(glob.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a grid as a line of text, one row after another.
+     *
+     * @param grid The grid to write.
+     * @return the rows separated by '/', with '.' for empty, '?' for unknown and 1 to 4 for the colours
+     */
+    public static String gridToString(CellState[][] grid) {
+        StringBuilder text = new StringBuilder();
+        for (CellState[] row : grid) {
+            if (text.length() > 0) {
+                text.append('/');
+            }
+            for (CellState cell : row) {
+                text.append(cell == CellState.UNKNOWN ? '?' : cell == CellState.EMPTY ? '.'
+                        : (char) ('1' + cell.ordinal() - CellState.COLOUR_1.ordinal()));
+            }
+        }
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Make sure nothing can open a window, even by accident, so this runs where there is no display
+        System.setProperty("java.awt.headless", "true");
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Format format = Format.CSV;
+        String output = null;
+        SolveOptions options = new SolveOptions();
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+            } else if (args[i].equals("--output") && i + 1 < args.length) {
+                output = args[++i];
+            } else if (args[i].equals("--time-limit") && i + 1 < args.length) {
+                options.setTimeLimitMillis(Long.parseLong(args[++i]));
+            } else if (args[i].equals("--max-guesses") && i + 1 < args.length) {
+                options.setMaxGuesses(Integer.parseInt(args[++i]));
+            } else {
+                files.addAll(findPuzzles(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: java -cp \"lib/*\":out src.BatchSolver [--threads N] [--format csv|json]"
+                    + " [--output file] [--time-limit ms] [--max-guesses N] puzzle-or-directory-or-glob...");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        int solved;
+        try (PrintWriter out = output == null ? new PrintWriter(System.out) : new PrintWriter(new FileWriter(output))) {
+            solved = new BatchSolver(threads, options).solveAll(files, format, out);
+        }
+        System.err.printf("Solved %d of %d puzzles in %d ms on %d threads%n", solved, files.size(),
+                (System.nanoTime() - start) / 1_000_000, threads);
+        System.exit(solved == files.size() ? 0 : 1);
+    }
+
+    /**
+     * How the result lines are written.
+     */
+    public enum Format {
+        CSV, // A header line, then comma separated values
+        JSON // One JSON object per line
+    }
+
+    /**
+     * Names the worker threads and makes them daemons, so they never keep the JVM alive.
+     */
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "batch-solver-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * The outcome for one puzzle file: a solve result, or an error if the file couldn't be loaded.
+     */
+    private static class Result {
+        final Path file;
+        final String name;
+        final SolveResult solveResult;
+        final String grid;
+        final String error;
+
+        Result(Path file, String name, SolveResult solveResult, CellState[][] grid, String error) {
+            this.file = file;
+            this.name = name;
+            this.solveResult = solveResult;
+            this.grid = grid == null ? null : gridToString(grid);
+            this.error = error;
+        }
+
+        String toCsv() {
+            if (solveResult == null) {
+                return String.join(",", csv(file.toString()), "", "ERROR", "", "", "", "", csv(error));
+            }
+            return String.join(",", csv(file.toString()), csv(name), solveResult.getStatus().name(),
+                    Long.toString(solveResult.getElapsedMillis()), Integer.toString(solveResult.getGuesses()),
+                    Integer.toString(solveResult.getPeakGridCopies()), grid, "");
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("file", file.toString());
+            if (solveResult == null) {
+                json.put("status", "ERROR");
+                json.put("error", error == null ? JSONObject.NULL : error);
+                return json;
+            }
+            json.put("name", name);
+            json.put("status", solveResult.getStatus().name());
+            json.put("millis", solveResult.getElapsedMillis());
+            json.put("guesses", solveResult.getGuesses());
+            json.put("peakGridCopies", solveResult.getPeakGridCopies());
+            json.put("grid", new JSONArray(grid.split("/")));
+            return json;
+        }
+
+        /**
+         * Quotes a CSV value if it has a comma, quote or line break in it.
+         */
+        private static String csv(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.matches("(?s).*[,\"\\r\\n].*")) {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+            return value;
+        }
+    }
+}
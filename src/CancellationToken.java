@@ -0,0 +1,24 @@
+package src;
+
+/**
+ * Lets one thread ask a solve running on another to stop early.
+ * The solve checks the token on its hot paths and ends with CANCELLED soon after cancel() is called.
+ * A token can be shared by several solves, to stop them all at once.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    /**
+     * Asks every solve using this token to stop. Cannot be undone.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if cancel() has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -13,6 +13,8 @@ import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 public class GUI extends JFrame {
+    private static final long SOLVE_TIME_LIMIT_MILLIS = 30_000; // How long the Solve button may take before giving up
+
     private Nonogram puzzle;
     private JButton[][] gridButtons;
     private JLabel statusLabel;
@@ -226,20 +228,60 @@ public class GUI extends JFrame {
             public void actionPerformed(ActionEvent e) {
                 noPuzzleLoadedError();
 
-                // create guesser object
-                Guesser guesser = new Guesser(puzzle);
-                boolean solved = guesser.solve();
+                // race the solving strategies on a copy of the puzzle in the background, so the window keeps responding,
+                // and give up after the time limit rather than leaving the player waiting on a hard puzzle
+                Nonogram working = puzzle.copy();
+                SolveOptions options = new SolveOptions();
+                options.setTimeLimitMillis(SOLVE_TIME_LIMIT_MILLIS);
+                setEnabled(false);
+                solveButton.setEnabled(false);
+                new SwingWorker<Portfolio.Result, Void>() {
+                    @Override
+                    protected Portfolio.Result doInBackground() {
+                        return new Portfolio().solve(working, options);
+                    }
 
-                updateGridColors();
+                    @Override
+                    protected void done() {
+                        setEnabled(true);
+                        solveButton.setEnabled(true);
+                        Portfolio.Result result;
+                        try {
+                            result = get();
+                        } catch (Exception ex) {
+                            JOptionPane.showMessageDialog(GUI.this, "The solver failed: " + ex.getMessage(), "Error",
+                                    JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
 
-                // display messages depending on whether the puzzle could be solved or not
-                if (solved) {
-                    JOptionPane.showMessageDialog(GUI.this, "Puzzle Solved!", "Success",
-                            JOptionPane.INFORMATION_MESSAGE);
-                } else {
-                    JOptionPane.showMessageDialog(GUI.this, "Could not completely solve the puzzle.", "Info",
-                            JOptionPane.WARNING_MESSAGE);
-                }
+                        // copy what was found onto the puzzle as one move, so it can be undone
+                        int mark = puzzle.mark();
+                        CellState[][] grid = working.getGrid();
+                        for (int i = 0; i < grid.length; i++) {
+                            puzzle.setRowStates(i, grid[i], false);
+                        }
+                        puzzle.keepChanges(mark);
+                        updateGridColors();
+
+                        // display messages depending on whether the puzzle could be solved or not
+                        if (result.getStatus() == SolveStatus.SOLVED) {
+                            JOptionPane.showMessageDialog(GUI.this, "Puzzle Solved!\nSolved by " + result.getWinner()
+                                    + " in " + result.getElapsedMillis() + " ms.", "Success",
+                                    JOptionPane.INFORMATION_MESSAGE);
+                        } else if (result.getStatus() == SolveStatus.CONTRADICTION) {
+                            JOptionPane.showMessageDialog(GUI.this, "This puzzle has no solution.\nFound by " + result.getWinner()
+                                    + " in " + result.getElapsedMillis() + " ms.", "Info",
+                                    JOptionPane.WARNING_MESSAGE);
+                        } else if (result.getStatus() == SolveStatus.TIMED_OUT) {
+                            JOptionPane.showMessageDialog(GUI.this, "Could not solve the puzzle within "
+                                    + SOLVE_TIME_LIMIT_MILLIS / 1000 + " seconds.", "Info",
+                                    JOptionPane.WARNING_MESSAGE);
+                        } else {
+                            JOptionPane.showMessageDialog(GUI.this, "Could not completely solve the puzzle.", "Info",
+                                    JOptionPane.WARNING_MESSAGE);
+                        }
+                    }
+                }.execute();
             }
         };
 
@@ -4,11 +4,33 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Guesser {
+    /**
+     * How the guesser picks the line to guess on.
+     */
+    public enum Branching {
+        FEWEST_FILLS, // the line with the fewest valid fills
+        FEWEST_UNKNOWNS; // the line with the fewest unknown cells, which is quicker to find but may give more fills
+    }
+
     private Nonogram puzzle;
     private int maxGuesses;
-    private int guessCount;
+    private AtomicInteger guessCount; // Shared by every branch of a parallel search
+    private LineCache lineCache; // Shared by every solver the guesser runs, and when counting fills
+    private LineSolver lineSolver; // Counts the fills of each line when choosing where to guess
+    private SolveStatus status; // How the last solve ended
+    private ForkJoinPool pool; // Used to probe and search in parallel, or null to do both one step at a time
+    private AtomicReference<CellState[][]> solution; // The first solution found by a parallel search
+    private Branching branching; // How to pick the line to guess on
+    private boolean probing; // Whether to probe cells before guessing
+    private SolveMonitor monitor; // Applies the options of the current solve, shared by every branch
+    private long placements; // Block placements tried by backtrackFill on this guesser's grid
     
     /**
      * Constructor for the Guesser class.
@@ -18,37 +40,363 @@ public class Guesser {
     public Guesser(Nonogram puzzle) {
         this.puzzle = puzzle;
         this.maxGuesses = 1000; // Prevent infinite guessing in for loop later on
-        this.guessCount = 0; // number of guesses 
+        this.guessCount = new AtomicInteger(); // number of guesses 
+        this.lineCache = new LineCache();
+        this.lineSolver = new LineSolver();
+        this.solution = new AtomicReference<>();
+        this.branching = Branching.FEWEST_FILLS;
+        this.probing = true;
+    }
+
+    /**
+     * Constructor for a guesser working on one branch of a parallel search.
+     * It shares the guess count, caches and solution with the guesser that started the search.
+     * 
+     * @param puzzle The copy of the puzzle for this branch.
+     * @param parent The guesser that started the search.
+     */
+    private Guesser(Nonogram puzzle, Guesser parent) {
+        this.puzzle = puzzle;
+        this.maxGuesses = parent.maxGuesses;
+        this.guessCount = parent.guessCount;
+        this.lineCache = parent.lineCache;
+        this.lineSolver = parent.lineSolver;
+        this.solution = parent.solution;
+        this.branching = parent.branching;
+        this.monitor = parent.monitor;
     }
     
+    /**
+     * @return the cache of line solutions shared by the guesser and its solvers
+     */
+    public LineCache getLineCache() {
+        return lineCache;
+    }
+
+    /**
+     * @param pool the pool used to probe cells in parallel before guessing, or null to probe them one at a time (the default)
+     * 
+     * With more than one worker in the pool, the guesses are searched in parallel too.
+     * Idle workers steal the untried fills of a guess from busy ones, taking a copy of the grid for them,
+     * and the first solution found stops the rest of the search.
+     * A pool with one worker searches one guess at a time, exactly as without a pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param branching how to pick the line to guess on (FEWEST_FILLS by default)
+     */
+    public void setBranching(Branching branching) {
+        this.branching = branching;
+    }
+
+    /**
+     * @param probing whether to probe cells between deduction and guessing (true by default)
+     */
+    public void setProbing(boolean probing) {
+        this.probing = probing;
+    }
+
+    /**
+     * @return how the last solve ended: SOLVED, CONTRADICTION if the puzzle has no solution,
+     * BUDGET_EXHAUSTED if the guesses ran out first, CANCELLED if the solving thread was interrupted
+     * or the solve cancelled, or TIMED_OUT if it ran out of time (null before solving)
+     */
+    public SolveStatus getStatus() {
+        return status;
+    }
+
     /**
      * @return boolean value determining if puzzle has been solved by solver
      * 
      * First try deductive solving before guessing to ensure gusser is required
-     * If deductive solving fails guessing method is implemented
+     * Deduction is followed by probing, which tries each state of each unknown cell to find more cells
+     * If both fail guessing method is implemented
+     * The reason for failing can be found with getStatus()
     */ 
     public boolean solve() {
-        Solver solver = new Solver(puzzle);
-        if (solver.solve(false)) {
-            return true;
+        return solve(new SolveOptions()).isSolved();
+    }
+
+    /**
+     * @param options the guess limit, time limit, cancellation token and progress listener for this solve
+     * @return how the solve ended, with how many cells it found, how many guesses it made and how long it took
+     * 
+     * Solves the puzzle as solve() does, checking the options between lines, probes and guesses.
+     * A solve that is cancelled or runs out of time stops soon after, leaving what it had found on the grid
+    */
+    public SolveResult solve(SolveOptions options) {
+        maxGuesses = options.getMaxGuesses();
+        guessCount.set(0);
+        monitor = new SolveMonitor(options, puzzle, "Guesser", guessCount::get);
+
+        // The solver's writes skip the move history, so the whole solve is kept as one move that can be undone
+        int start = puzzle.mark();
+
+        if (probing) {
+            Prober prober = new Prober(puzzle, lineCache);
+            prober.setPool(pool);
+            prober.setMonitor(monitor);
+            status = prober.probe();
+        } else {
+            status = deduce();
         }
-        return guessAndCheck();
+        if (status == SolveStatus.UNSOLVED) {
+            long searchStart = System.nanoTime();
+            status = pool != null && pool.getParallelism() > 1 ? searchInParallel() : guessAndCheck();
+            monitor.getStats().add(SolverStats.Counter.SEARCH_NANOS, System.nanoTime() - searchStart);
+        }
+        puzzle.keepChanges(start);
+        return monitor.finish(status);
+    }
+
+    /**
+     * @return the result of deduction on this guesser's grid, which stops early if the solve is cancelled or out of time
+     */
+    private SolveStatus deduce() {
+        Solver solver = new Solver(puzzle, lineCache);
+        solver.setMonitor(monitor);
+        return solver.propagate();
     }
     
     /**
      * 
-     * @return boolean if puzzle is solvable
+     * @return SOLVED if a solution was found, CONTRADICTION if no guess from this state leads to one,
+     * BUDGET_EXHAUSTED if the guesses ran out, CANCELLED if the thread was interrupted or the solve cancelled,
+     * or TIMED_OUT if the solve ran out of time
      * 
      * Main method in the class that attempts to solve the a puzzle by guessing possible solutions
+     * A guess that deduction shows to be impossible is dropped straight away, without guessing any further from it
      */
-    private boolean guessAndCheck() {
-        if (guessCount++ > maxGuesses) {
-            return false;
+    private SolveStatus guessAndCheck() {
+        if (guessCount.getAndIncrement() > maxGuesses) {
+            return SolveStatus.BUDGET_EXHAUSTED;
+        }
+        if (VirtualThreads.checkpoint()) {
+            return SolveStatus.CANCELLED;
+        }
+        SolveStatus stop = monitor.check();
+        if (stop != null) {
+            return stop;
+        }
+        
+        // Find the line with the fewest possible solutions, and all the ways to fill it
+        int line = findMostConstrainedLine();
+        long placementsBefore = placements;
+        List<CellState[]> possibleFills = possibleFills(line);
+        long placementsConsidered = placements - placementsBefore;
+        
+        if (possibleFills.isEmpty()) {
+            return SolveStatus.CONTRADICTION; // No valid fills, puzzle is unsolvable
         }
         
-        // Find the line with the fewest possible solutions
-        int lineIndex = findMostConstrainedLine();
-        boolean isRow = true; // default to row
+        // Iterate through all possible line configurations we generated,
+        // trying each one as a potential solution path
+        for (CellState[] fill : possibleFills) {
+            
+            // 1. PRESERVE CURRENT STATE 
+            // Mark the change log before making changes, which lets us backtrack
+            // by putting back only the cells changed if this path doesn't lead to a solution
+            int mark = puzzle.mark();
+            SolverEvents.GuessEvent event = null;
+            if (SolverEvents.GUESS.isEnabled()) {
+                event = new SolverEvents.GuessEvent();
+                event.begin();
+            }
+            
+            // 2. APPLY THE CURRENT GUESS
+            // Update either a row or column with our potential fill configuration
+            applyFill(line, fill);
+            
+            // 3. TEST THE GUESS
+            // Try to solve the puzzle with this configuration in place:
+            // a) First try pure logical deduction (no guessing)
+            SolveStatus result = deduce();
+            
+            // b) If deduction neither solves it nor rules it out, recursively try more guessing (depth-first search)
+            if (result == SolveStatus.UNSOLVED) {
+                result = guessAndCheck();
+            }
+            
+            // If either approach solved it, success message
+            if (result == SolveStatus.SOLVED) {
+                commitGuess(event, line, possibleFills.size(), placementsConsidered, false, result);
+                return result;
+            }
+            
+            // 4. BACKTRACK IF UNSUCCESSFUL
+            // Restore the puzzle state to before we tried this fill configuration,
+            // by rolling back every cell changed since the mark (including by deeper guesses)
+            puzzle.rollback(mark);
+            monitor.getStats().increment(SolverStats.Counter.BACKTRACKS);
+            commitGuess(event, line, possibleFills.size(), placementsConsidered, true, result);
+
+            // Stop searching altogether once the guesses have run out or the solve is cancelled or out of time
+            if (result != SolveStatus.CONTRADICTION) {
+                return result;
+            }
+        }
+        
+        // Every possible fill led to a contradiction
+        return SolveStatus.CONTRADICTION;
+    }
+
+    /**
+     * Fills in and commits the flight recorder event for a guess, if one was begun and a recording wants it.
+     */
+    private void commitGuess(SolverEvents.GuessEvent event, int line, int fills, long placementsConsidered,
+            boolean backtracked, SolveStatus result) {
+        if (event != null && event.shouldCommit()) {
+            int rows = puzzle.getRowConstraints().length;
+            event.puzzleName = puzzle.getName();
+            event.column = line >= rows;
+            event.lineIndex = line < rows ? line : line - rows;
+            event.fills = fills;
+            event.placementsConsidered = placementsConsidered;
+            event.backtracked = backtracked;
+            event.status = result.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * @return SOLVED if a solution was found, CONTRADICTION if there is none,
+     * BUDGET_EXHAUSTED if the guesses ran out, or CANCELLED or TIMED_OUT if the solve was stopped
+     * 
+     * Searches the guesses in parallel on the pool, then copies the first solution found into the puzzle
+     */
+    private SolveStatus searchInParallel() {
+        solution.set(null);
+        SolveStatus result = pool.invoke(new SearchTask(this, -1, null, 0, false));
+        CellState[][] found = solution.get();
+        if (found == null) {
+            return result;
+        }
+        for (int i = 0; i < found.length; i++) {
+            puzzle.setRowStates(i, found[i], false);
+        }
+        return SolveStatus.SOLVED;
+    }
+
+    /**
+     * @return the result of this branch of a parallel search, or null if it was abandoned because another branch found a solution
+     * 
+     * Deduces from this guesser's grid, then searches the fills of the most constrained line
+     */
+    private SolveStatus searchBranch() {
+        if (solution.get() != null) {
+            return null;
+        }
+        SolveStatus result = monitor.check();
+        if (result != null) {
+            return result;
+        }
+        result = deduce();
+        if (result == SolveStatus.SOLVED) {
+            solution.compareAndSet(null, puzzle.getGridCopy());
+            return result;
+        }
+        if (result != SolveStatus.UNSOLVED) {
+            return result;
+        }
+        if (guessCount.getAndIncrement() > maxGuesses) {
+            return SolveStatus.BUDGET_EXHAUSTED;
+        }
+        int line = findMostConstrainedLine();
+        return searchFills(line, possibleFills(line), 0);
+    }
+
+    /**
+     * @param line the line being guessed on, where rows come first followed by columns
+     * @param fills the fills of the line
+     * @param from the first fill to try
+     * @return the result of searching the fills, as for searchBranch()
+     * 
+     * Tries the fills one after another on this guesser's grid, rolling each back with the change log,
+     * as guessAndCheck() does. While the worker has few tasks waiting to be stolen, the fills after the
+     * one being tried are handed to a new task with a copy of the grid, so each fork costs one copy
+     * rather than one per fill, and a busy pool searches without copying at all.
+     */
+    private SolveStatus searchFills(int line, List<CellState[]> fills, int from) {
+        SearchTask rest = null;
+        SolveStatus result = SolveStatus.CONTRADICTION;
+        for (int k = from; k < fills.size() && rest == null; k++) {
+            if (solution.get() != null) {
+                break;
+            }
+            if (k + 1 < fills.size() && ForkJoinTask.getSurplusQueuedTaskCount() < 2) {
+                Guesser other = new Guesser(puzzle.copy(), this);
+                monitor.gridCopyTaken();
+                rest = new SearchTask(other, line, fills, k + 1, true);
+                rest.fork();
+            }
+
+            int mark = puzzle.mark();
+            applyFill(line, fills.get(k));
+            SolveStatus fillResult = searchBranch();
+            puzzle.rollback(mark); // A solution has already been copied out, so the grid can be rolled back either way
+            if (fillResult == null || fillResult == SolveStatus.SOLVED) {
+                break;
+            }
+            monitor.getStats().increment(SolverStats.Counter.BACKTRACKS);
+            if (fillResult != SolveStatus.CONTRADICTION) {
+                result = fillResult; // The guesses ran out, or the solve was stopped
+                break;
+            }
+        }
+        if (rest != null) {
+            SolveStatus restResult = rest.join();
+            if (restResult != null && restResult != SolveStatus.CONTRADICTION) {
+                result = restResult;
+            }
+        }
+        return solution.get() != null ? null : result;
+    }
+
+    /**
+     * A task in a parallel search, which either searches a branch from its guesser's grid,
+     * or carries on through the fills of a line from a given fill, on a copy of the grid made when it was forked.
+     * Returns null if the branch was abandoned because another branch found a solution.
+     */
+    private class SearchTask extends RecursiveTask<SolveStatus> {
+        private static final long serialVersionUID = 1L;
+
+        private final Guesser branch;
+        private final int line; // The line whose fills to carry on with, or -1 to search the branch from the start
+        private final List<CellState[]> fills;
+        private final int from;
+        private final boolean copied; // Whether the branch has its own copy of the grid, released when the task ends
+
+        SearchTask(Guesser branch, int line, List<CellState[]> fills, int from, boolean copied) {
+            this.branch = branch;
+            this.line = line;
+            this.fills = fills;
+            this.from = from;
+            this.copied = copied;
+        }
+
+        @Override
+        protected SolveStatus compute() {
+            try {
+                return line < 0 ? branch.searchBranch() : branch.searchFills(line, fills, from);
+            } finally {
+                if (copied) {
+                    monitor.gridCopyReleased();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param line the line to fill, where rows come first followed by columns
+     * @return all the valid fills of the line, in the order to try them
+     */
+    private List<CellState[]> possibleFills(int line) {
+        int rows = puzzle.getRowConstraints().length;
+        boolean isRow = line < rows;
+        int lineIndex = isRow ? line : line - rows;
         
         // Generate all possible fills for this line
         /**
@@ -69,10 +417,10 @@ public class Guesser {
         BlockConstraint[] constraints = isRow ? puzzle.getRowConstraints()[lineIndex] : puzzle.getColumnConstraints()[lineIndex];
         CellState[] currentLine = isRow ? getRow(lineIndex) : getColumn(lineIndex);
             
+        long placementsBefore = placements;
         List<CellState[]> possibleFills = generateLineFills(constraints, currentLine);
-        
-        if (possibleFills.isEmpty()) {
-            return false; // No valid fills, puzzle is unsolvable
+        if (monitor != null) {
+            monitor.getStats().add(SolverStats.Counter.PLACEMENTS_CONSIDERED, placements - placementsBefore);
         }
         
         // Sort possible fills by length (shortest first)
@@ -83,92 +431,68 @@ public class Guesser {
             }
             return count; // Use this count as the sorting count 
         }));
-        
-        // Iterate through all possible line configurations we generated,
-        // trying each one as a potential solution path
-        for (CellState[] fill : possibleFills) {
-            
-            // 1. PRESERVE CURRENT STATE 
-            // Create a copy of the entire puzzle's current state before making changes
-            // which should let us to backtrack if this path doesn't lead to a solution
-            CellState[][] savedState = puzzle.getGridCopy();
-            
-            // 2. APPLY THE CURRENT GUESS
-            // Update either a row or column with our potential fill configuration
-            if (isRow) {
-                setRow(lineIndex, fill);  // Apply to row if working with rows
-            } else {
-                setColumn(lineIndex, fill);  // Apply to column if working with columns
-            }
-            
-            // 3. TEST THE GUESS
-            // Try to solve the puzzle with this configuration in place:
-            // a) First try pure logical deduction (no guessing)
-            Solver solver = new Solver(puzzle);
-            boolean solvedByDeduction = solver.solve(false);  // noob
-            
-            // b) If deduction fails, recursively try more guessing (depth-first search)
-            boolean solvedByGuessing = guessAndCheck(); 
-            
-            // If either approach solved it, success message
-            if (solvedByDeduction || solvedByGuessing) {
-                return true;
-            }
-            
-            // 4. BACKTRACK IF UNSUCCESSFUL
-            // Restore the puzzle state to before we tried this fill configuration:
-            // a) First reset to initial empty state
-            puzzle.resetGrid();
-            puzzle.saveState();
-            
-            // b) Then copy back our saved state cell-by-cell
-            // https://www.tutorialspoint.com/java/lang/system_arraycopy.htm
-            for (int i = 0; i < savedState.length; i++) {
-                System.arraycopy(
-                    savedState[i],          // Source array (saved row)
-                    0,                     // Source starting position
-                    puzzle.getGrid()[i],    // Destination array (current grid row)
-                    0,                      // Destination starting position
-                    savedState[i].length    // Number of cells to copy
-                );
-            }
+        return possibleFills;
+    }
+
+    /**
+     * @param line the line to fill, where rows come first followed by columns
+     * @param fill the fill to write to the line
+     * 
+     * The guess and the cells it fills in are counted in the stats of the solve
+     */
+    private void applyFill(int line, CellState[] fill) {
+        int rows = puzzle.getRowConstraints().length;
+        CellState[] current = line < rows ? getRow(line) : getColumn(line - rows);
+        int unknowns = 0;
+        for (CellState state : current) {
+            if (state == CellState.UNKNOWN) unknowns++;
+        }
+        monitor.getStats().increment(SolverStats.Counter.GUESSES);
+        monitor.getStats().add(SolverStats.Counter.CELLS_FIXED_BY_GUESSING, unknowns);
+
+        if (line < rows) {
+            setRow(line, fill);  // Apply to row if working with rows
+        } else {
+            setColumn(line - rows, fill);  // Apply to column if working with columns
         }
-        
-        return false;
     }
 
     /**
-     * @return int representing the index of the line with the fewest possibilities
+     * @return int representing the line with the fewest possibilities, where rows come first followed by columns
      * 
      * This method finds the line (row or column) with the fewest possible configurations
      * based on the current state of the puzzle and its constraints.
-     * It returns the index of that line.
+     * The fills are counted by the line solver without generating them.
+     * With the FEWEST_UNKNOWNS heuristic, the line with the fewest unknown cells is picked instead.
+     * It returns the index of that line, so an index of at least the number of rows is a column.
      */
     private int findMostConstrainedLine() {
-        int minPossibilities = Integer.MAX_VALUE; // acts as an infinity placeholder for initial comparison, so we can find the minimum
-        // We will return the index of the line and whether it is a row or column
+        long minPossibilities = Long.MAX_VALUE; // acts as an infinity placeholder for initial comparison, so we can find the minimum
+        int rows = puzzle.getRowConstraints().length;
         int constrainedLine = 0;
         
         // Check rows
-        for (int i = 0; i < puzzle.getRowConstraints().length; i++) {
+        for (int i = 0; i < rows; i++) {
             CellState[] line = getRow(i);
             if (hasUnknowns(line)) { //check for UNKNOWNS
-                List<CellState[]> fills = generateLineFills(puzzle.getRowConstraints()[i], line);
-                if (fills.size() < minPossibilities) { // this will never fail because we are checking for unknowns against basically infinty
-                    minPossibilities = fills.size();
+                BlockConstraint[] constraints = puzzle.getRowConstraints()[i];
+                long fills = possibilities(constraints, line);
+                if (fills < minPossibilities) {
+                    minPossibilities = fills;
                     constrainedLine = i;
                 }
             }
         }
         
-        // Check columns
+        // Check columns, which are only picked over a row if they have strictly fewer possibilities
         for (int j = 0; j < puzzle.getColumnConstraints().length; j++) {
             CellState[] line = getColumn(j);
             if (hasUnknowns(line)) {
-                List<CellState[]> fills = generateLineFills(puzzle.getColumnConstraints()[j], line);
-                if (fills.size() < minPossibilities) { // again this will never fail because we are checking for unknowns against basically infinty
-                    minPossibilities = fills.size();
-                    constrainedLine = j;
+                BlockConstraint[] constraints = puzzle.getColumnConstraints()[j];
+                long fills = possibilities(constraints, line);
+                if (fills < minPossibilities) {
+                    minPossibilities = fills;
+                    constrainedLine = rows + j;
                 }
             }
         }
@@ -176,6 +500,22 @@ public class Guesser {
         return constrainedLine;
     }
     
+    /**
+     * @return how many possibilities a line has, by the branching heuristic in use
+     * 
+     * For FEWEST_FILLS this is the number of valid fills, and for FEWEST_UNKNOWNS the number of unknown cells
+     */
+    private long possibilities(BlockConstraint[] constraints, CellState[] line) {
+        if (branching == Branching.FEWEST_UNKNOWNS) {
+            long unknowns = 0;
+            for (CellState state : line) {
+                if (state == CellState.UNKNOWN) unknowns++;
+            }
+            return unknowns;
+        }
+        return lineCache.countFills(constraints, line, () -> lineSolver.countFills(constraints, line));
+    }
+
     private boolean hasUnknowns(CellState[] line) {
         for (CellState state : line) {
             if (state == CellState.UNKNOWN) return true;
@@ -204,13 +544,11 @@ public class Guesser {
      * @param newRow New row values to set
      * 
      * This method sets the values of a specific row in the puzzle grid.
-     * It iterates through each cell in the specified row and updates its state.
+     * The whole row is written at once, without adding to the player's move history.
      */
     
     private void setRow(int rowIndex, CellState[] newRow) {
-        for (int j = 0; j < newRow.length; j++) {
-            puzzle.setCellState(rowIndex, j, newRow[j]);
-        }
+        puzzle.setRowStates(rowIndex, newRow, false);
     }
     
     /**
@@ -235,12 +573,10 @@ public class Guesser {
      * @param newCol New column values to set
      * 
      * This method sets the values of a specific column in the puzzle grid.
-     * It iterates through each cell in the specified column and updates its state.
+     * The whole column is written at once, without adding to the player's move history.
      */
     private void setColumn(int colIndex, CellState[] newCol) {
-        for (int i = 0; i < newCol.length; i++) {
-            puzzle.setCellState(i, colIndex, newCol[i]);
-        }
+        puzzle.setColumnStates(colIndex, newCol, false);
     }
     /**
      * @return List of possible fills for a line based on constraints and current state
@@ -298,6 +634,7 @@ public class Guesser {
 
         // Try placing the current block at every valid position
         for (int start = index; start <= maxStart; start++) {
+            placements++;
             List<CellState> temp = new ArrayList<>(soFar);
 
             // Fill EMPTY before the block if needed
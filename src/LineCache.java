@@ -0,0 +1,195 @@
+package src;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of line solutions, shared between the Solver and the Guesser.
+ * Entries are keyed on the constraints and the current state of a line, not on which row
+ * or column it is, so identical lines anywhere in the puzzle share an entry.
+ * When the cache is full the least recently used entry is evicted.
+ * All methods are thread safe, and the line solving itself is done outside the lock.
+ */
+public class LineCache {
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache with the default capacity.
+     */
+    public LineCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache holding at most a given number of lines.
+     *
+     * @param capacity The maximum number of lines to keep.
+     */
+    public LineCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > LineCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the merged line for a line from the cache, or solves it with the line solver and stores it.
+     * The returned array is shared with the cache, so must not be modified.
+     *
+     * @param constraints The constraints for the line (row or column).
+     * @param line        The current state of the line.
+     * @param lineSolver  The line solver to use if the line is not in the cache.
+     * @return The merged line, or null if there is no valid fill for the line.
+     */
+    public CellState[] solve(BlockConstraint[] constraints, CellState[] line, LineSolver lineSolver) {
+        Key key = new Key(constraints, line);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.solved) {
+                hits++;
+                return entry.solution;
+            }
+            misses++;
+        }
+
+        CellState[] solution = lineSolver.solve(constraints, line);
+
+        synchronized (this) {
+            Entry entry = entryFor(key);
+            entry.solution = solution;
+            entry.solved = true;
+        }
+        return solution;
+    }
+
+    /**
+     * Gets the number of valid fills for a line from the cache, or counts them and stores the count.
+     *
+     * @param constraints The constraints for the line (row or column).
+     * @param line        The current state of the line.
+     * @param counter     Counts the fills if the line is not in the cache.
+     * @return The number of valid fills for the line.
+     */
+    public long countFills(BlockConstraint[] constraints, CellState[] line, LongSupplier counter) {
+        Key key = new Key(constraints, line);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.fills >= 0) {
+                hits++;
+                return entry.fills;
+            }
+            misses++;
+        }
+
+        long fills = counter.getAsLong();
+
+        synchronized (this) {
+            entryFor(key).fills = fills;
+        }
+        return fills;
+    }
+
+    /**
+     * Gets the entry for a key, adding an empty one if it is not in the cache.
+     */
+    private Entry entryFor(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that had to solve or count the line
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries evicted to keep the cache within its capacity
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of lines currently in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * What is known about a line. Either part may not have been worked out yet.
+     */
+    private static class Entry {
+        CellState[] solution;
+        boolean solved; // solution can be null when there is no valid fill, so this marks it as known
+        long fills = -1;
+    }
+
+    /**
+     * A compact encoding of a line's constraints and current cells.
+     * Each constraint takes 3 bytes (colour and a 2 byte length), then a marker byte,
+     * the 2 byte line length, and the cells packed two to a byte.
+     */
+    private static class Key {
+        private final byte[] bytes;
+        private final int hash;
+
+        Key(BlockConstraint[] constraints, CellState[] line) {
+            bytes = new byte[constraints.length * 3 + 3 + (line.length + 1) / 2];
+            int at = 0;
+            for (BlockConstraint block : constraints) {
+                bytes[at++] = (byte) block.getState().ordinal();
+                bytes[at++] = (byte) (block.getLength() >>> 8);
+                bytes[at++] = (byte) block.getLength();
+            }
+            bytes[at++] = (byte) 0xFF; // Marks the end of the constraints, as no colour has this ordinal
+            bytes[at++] = (byte) (line.length >>> 8);
+            bytes[at++] = (byte) line.length;
+            for (int i = 0; i < line.length; i++) {
+                bytes[at + i / 2] |= (byte) (line[i].ordinal() << (i % 2 == 0 ? 0 : 4));
+            }
+            hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(bytes, ((Key) other).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
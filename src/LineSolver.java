@@ -0,0 +1,387 @@
+package src;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Solves a single line (row or column) of a nonogram using dynamic programming.
+ * Instead of generating every valid fill of the line and merging them, it works out
+ * which blocks can reach each position from the left and from the right, and so
+ * finds the states each cell can take in at least one valid fill.
+ * This takes O(length x blocks) time, however many fills the line has.
+ * Before that, a cheap leftmost/rightmost overlap stage settles the lines it can on its own,
+ * and counts are kept of how many lines each stage dealt with.
+ */
+public class LineSolver {
+    private static final CellState[] STATES = CellState.values();
+    private static final int STATE_COUNT = STATES.length;
+
+    // Counters can be updated from several threads when lines are solved in parallel
+    private final LongAdder overlapSettled = new LongAdder();
+    private final LongAdder fullSolves = new LongAdder();
+
+    /**
+     * Finds the cells of a line that take the same state in every valid fill.
+     * Gives the same result as merging every fill from backtracking, without building any fills.
+     * Lines are first tried with the cheap overlap stage, and only go through the full
+     * dynamic programming stage if that leaves cells undecided.
+     *
+     * @param constraints The constraints for the line (row or column).
+     * @param line        The current state of the line.
+     * @return A merged line, where each cell is either the only state it can take or UNKNOWN,
+     *         or null if there is no valid fill for the line.
+     */
+    public CellState[] solve(BlockConstraint[] constraints, CellState[] line) {
+        CellState[] forced = overlap(constraints, line);
+        if (forced == null) {
+            overlapSettled.increment();
+            return null;
+        }
+
+        // If every cell is now known, the line either is the only valid fill or has no valid fill
+        boolean complete = true;
+        for (CellState cell : forced) {
+            if (cell == CellState.UNKNOWN) {
+                complete = false;
+                break;
+            }
+        }
+        if (complete) {
+            overlapSettled.increment();
+            return matches(constraints, forced) ? forced : null;
+        }
+
+        fullSolves.increment();
+        return solveByReachability(constraints, forced);
+    }
+
+    /**
+     * Counts the valid fills of a line without building any of them.
+     * Uses the same forward pass as the line solver, adding up the ways to place the blocks
+     * rather than only recording whether there is one.
+     * Counts too large for a long are capped at Long.MAX_VALUE.
+     *
+     * @param constraints The constraints for the line (row or column).
+     * @param line        The current state of the line.
+     * @return The number of valid fills for the line.
+     */
+    public long countFills(BlockConstraint[] constraints, CellState[] line) {
+        int length = line.length;
+        int blocks = constraints.length;
+        int width = length + 1;
+
+        int[][] blocked = new int[STATE_COUNT][];
+        blocked[CellState.EMPTY.ordinal()] = blockedCounts(line, CellState.EMPTY);
+        for (BlockConstraint block : constraints) {
+            int state = block.getState().ordinal();
+            if (blocked[state] == null) {
+                blocked[state] = blockedCounts(line, block.getState());
+            }
+        }
+        int[] blockedEmpty = blocked[CellState.EMPTY.ordinal()];
+
+        // For j blocks placed in the first i cells:
+        // afterGap[j][i] - the number of fills where cell i-1 is empty (or i is 0)
+        // afterBlock[j][i] - the number of fills where block j-1 finishes on cell i-1
+        long[] afterGap = new long[(blocks + 1) * width];
+        long[] afterBlock = new long[(blocks + 1) * width];
+        afterGap[0] = 1;
+        for (int i = 0; i <= length; i++) {
+            for (int j = 0; j <= blocks; j++) {
+                if (i > 0 && blockedEmpty[i] == blockedEmpty[i - 1]) {
+                    afterGap[j * width + i] = add(afterGap[j * width + i - 1], afterBlock[j * width + i - 1]);
+                }
+                if (j > 0) {
+                    BlockConstraint block = constraints[j - 1];
+                    int start = i - block.getLength();
+                    if (start >= 0 && canPaint(blocked[block.getState().ordinal()], start, i)) {
+                        long ways = afterGap[(j - 1) * width + start];
+                        if (j > 1 && constraints[j - 2].getState() != block.getState()) {
+                            ways = add(ways, afterBlock[(j - 1) * width + start]);
+                        }
+                        afterBlock[j * width + i] = ways;
+                    }
+                }
+            }
+        }
+        return add(afterGap[blocks * width + length], afterBlock[blocks * width + length]);
+    }
+
+    /**
+     * Adds two counts, capping the result at Long.MAX_VALUE.
+     */
+    private static long add(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Gets the number of lines settled by the overlap stage, either fully filled in or found to have no valid fill.
+     * @return the number of lines settled without the full line solver
+     */
+    public long getOverlapSettled() {
+        return overlapSettled.sum();
+    }
+
+    /**
+     * Gets the number of lines which had to go through the full dynamic programming stage.
+     * @return the number of lines solved by reachability
+     */
+    public long getFullSolves() {
+        return fullSolves.sum();
+    }
+
+    /**
+     * Applies the leftmost/rightmost overlap rule to a line.
+     * Each block is packed as far left and as far right as the constraints allow, ignoring the
+     * current cells. Cells covered by a block in both packings must be that block's colour, and
+     * cells no block can reach must be empty.
+     *
+     * @param constraints The constraints for the line (row or column).
+     * @param line        The current state of the line.
+     * @return A copy of the line with the forced cells filled in, or null if the constraints
+     *         cannot fit or a forced cell clashes with a known cell.
+     */
+    CellState[] overlap(BlockConstraint[] constraints, CellState[] line) {
+        int length = line.length;
+        int blocks = constraints.length;
+        int[] leftmost = new int[blocks];
+        int[] rightmost = new int[blocks];
+
+        // Pack the blocks to the left, leaving a gap only between blocks of the same colour
+        int position = 0;
+        for (int j = 0; j < blocks; j++) {
+            if (j > 0 && constraints[j].getState() == constraints[j - 1].getState()) {
+                position++;
+            }
+            leftmost[j] = position;
+            position += constraints[j].getLength();
+        }
+        if (position > length) {
+            return null;
+        }
+
+        // Pack the blocks to the right
+        position = length;
+        for (int j = blocks - 1; j >= 0; j--) {
+            if (j < blocks - 1 && constraints[j].getState() == constraints[j + 1].getState()) {
+                position--;
+            }
+            position -= constraints[j].getLength();
+            rightmost[j] = position;
+        }
+
+        CellState[] result = line.clone();
+        int reachedUpTo = 0; // cells before this can't be covered by any block seen so far
+        for (int j = 0; j < blocks; j++) {
+            if (!force(result, reachedUpTo, leftmost[j], CellState.EMPTY)) {
+                return null;
+            }
+            if (!force(result, rightmost[j], leftmost[j] + constraints[j].getLength(), constraints[j].getState())) {
+                return null;
+            }
+            reachedUpTo = Math.max(reachedUpTo, rightmost[j] + constraints[j].getLength());
+        }
+        if (!force(result, reachedUpTo, length, CellState.EMPTY)) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Sets the cells in [start, end) to a state.
+     * @return false if one of the cells is already known to be a different state
+     */
+    private boolean force(CellState[] line, int start, int end, CellState state) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == CellState.UNKNOWN) {
+                line[i] = state;
+            } else if (line[i] != state) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a fully filled in line gives exactly the blocks in its constraints.
+     */
+    private boolean matches(BlockConstraint[] constraints, CellState[] line) {
+        int j = 0;
+        int i = 0;
+        while (i < line.length) {
+            if (line[i] == CellState.EMPTY) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < line.length && line[i] == line[start]) {
+                i++;
+            }
+            if (j == constraints.length || constraints[j].getState() != line[start]
+                    || constraints[j].getLength() != i - start) {
+                return false;
+            }
+            j++;
+        }
+        return j == constraints.length;
+    }
+
+    /**
+     * Runs the full dynamic programming stage on a line.
+     * Works out which blocks can reach each position from the left and from the right,
+     * then marks the states each cell can take in at least one valid fill.
+     *
+     * @param constraints The constraints for the line (row or column).
+     * @param line        The current state of the line.
+     * @return A merged line, or null if there is no valid fill for the line.
+     */
+    private CellState[] solveByReachability(BlockConstraint[] constraints, CellState[] line) {
+        int length = line.length;
+        int blocks = constraints.length;
+        int width = length + 1;
+
+        // blocked[s][i] is the number of cells before i which are known to not be state s
+        int[][] blocked = new int[STATE_COUNT][];
+        blocked[CellState.EMPTY.ordinal()] = blockedCounts(line, CellState.EMPTY);
+        for (BlockConstraint block : constraints) {
+            int state = block.getState().ordinal();
+            if (blocked[state] == null) {
+                blocked[state] = blockedCounts(line, block.getState());
+            }
+        }
+        int[] blockedEmpty = blocked[CellState.EMPTY.ordinal()];
+
+        // Forward pass, for j blocks placed in the first i cells:
+        // afterGap[j][i] - cell i-1 is empty (or i is 0)
+        // afterBlock[j][i] - block j-1 finishes on cell i-1
+        boolean[] afterGap = new boolean[(blocks + 1) * width];
+        boolean[] afterBlock = new boolean[(blocks + 1) * width];
+        afterGap[0] = true;
+        for (int i = 0; i <= length; i++) {
+            for (int j = 0; j <= blocks; j++) {
+                if (i > 0 && blockedEmpty[i] == blockedEmpty[i - 1]) {
+                    afterGap[j * width + i] = afterGap[j * width + i - 1] || afterBlock[j * width + i - 1];
+                }
+                if (j > 0) {
+                    BlockConstraint block = constraints[j - 1];
+                    int start = i - block.getLength();
+                    if (start >= 0 && canPaint(blocked[block.getState().ordinal()], start, i)) {
+                        afterBlock[j * width + i] = canStart(constraints, j - 1, afterGap, afterBlock, width, start);
+                    }
+                }
+            }
+        }
+
+        if (!afterGap[blocks * width + length] && !afterBlock[blocks * width + length]) {
+            return null; // No valid fills
+        }
+
+        // Backward pass, for blocks j onwards placed in the cells from i:
+        // beforeGap[j][i] - cell i is empty (or i is the end of the line)
+        // beforeBlock[j][i] - block j starts on cell i
+        boolean[] beforeGap = new boolean[(blocks + 1) * width];
+        boolean[] beforeBlock = new boolean[(blocks + 1) * width];
+        beforeGap[blocks * width + length] = true;
+        for (int i = length; i >= 0; i--) {
+            for (int j = blocks; j >= 0; j--) {
+                if (i < length && blockedEmpty[i + 1] == blockedEmpty[i]) {
+                    beforeGap[j * width + i] = beforeGap[j * width + i + 1] || beforeBlock[j * width + i + 1];
+                }
+                if (j < blocks) {
+                    BlockConstraint block = constraints[j];
+                    int end = i + block.getLength();
+                    if (end <= length && canPaint(blocked[block.getState().ordinal()], i, end)) {
+                        beforeBlock[j * width + i] = canEnd(constraints, j, beforeGap, beforeBlock, width, end);
+                    }
+                }
+            }
+        }
+
+        // Mark the states each cell can take, using difference arrays for the blocks
+        boolean[] canBeEmpty = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            for (int j = 0; j <= blocks && !canBeEmpty[i]; j++) {
+                canBeEmpty[i] = (afterGap[j * width + i] || afterBlock[j * width + i]) && beforeGap[j * width + i];
+            }
+        }
+
+        int[][] coverage = new int[STATE_COUNT][];
+        for (int j = 0; j < blocks; j++) {
+            BlockConstraint block = constraints[j];
+            int state = block.getState().ordinal();
+            if (coverage[state] == null) {
+                coverage[state] = new int[width];
+            }
+            for (int start = 0; start + block.getLength() <= length; start++) {
+                int end = start + block.getLength();
+                // beforeBlock already checks the cells can be painted and the rest of the line fits
+                if (beforeBlock[j * width + start] && canStart(constraints, j, afterGap, afterBlock, width, start)) {
+                    coverage[state][start]++;
+                    coverage[state][end]--;
+                }
+            }
+        }
+
+        CellState[] result = new CellState[length];
+        int[] running = new int[STATE_COUNT];
+        for (int i = 0; i < length; i++) {
+            CellState only = canBeEmpty[i] ? CellState.EMPTY : null;
+            int options = canBeEmpty[i] ? 1 : 0;
+            for (int state = 0; state < STATE_COUNT; state++) {
+                if (coverage[state] != null) {
+                    running[state] += coverage[state][i];
+                    if (running[state] > 0) {
+                        only = STATES[state];
+                        options++;
+                    }
+                }
+            }
+            result[i] = options == 1 ? only : CellState.UNKNOWN;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether block j can start on a given cell, given the blocks placed before it.
+     * A block can follow a gap, or directly follow a block of a different colour.
+     */
+    private boolean canStart(BlockConstraint[] constraints, int j, boolean[] afterGap, boolean[] afterBlock,
+            int width, int start) {
+        if (afterGap[j * width + start]) {
+            return true;
+        }
+        return j > 0 && afterBlock[j * width + start]
+                && constraints[j - 1].getState() != constraints[j].getState();
+    }
+
+    /**
+     * Checks whether block j can finish just before a given cell, given the blocks placed after it.
+     */
+    private boolean canEnd(BlockConstraint[] constraints, int j, boolean[] beforeGap, boolean[] beforeBlock,
+            int width, int end) {
+        if (beforeGap[(j + 1) * width + end]) {
+            return true;
+        }
+        return j + 1 < constraints.length && beforeBlock[(j + 1) * width + end]
+                && constraints[j + 1].getState() != constraints[j].getState();
+    }
+
+    /**
+     * Checks that none of the cells in [start, end) are known to be a different state.
+     */
+    private boolean canPaint(int[] blocked, int start, int end) {
+        return blocked[end] == blocked[start];
+    }
+
+    /**
+     * Counts, for each position, how many earlier cells are known to be a state other than the given one.
+     */
+    private int[] blockedCounts(CellState[] line, CellState state) {
+        int[] counts = new int[line.length + 1];
+        for (int i = 0; i < line.length; i++) {
+            boolean blocked = line[i] != CellState.UNKNOWN && line[i] != state;
+            counts[i + 1] = counts[i] + (blocked ? 1 : 0);
+        }
+        return counts;
+    }
+}
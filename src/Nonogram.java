@@ -13,23 +13,49 @@ public class Nonogram {
     private BlockConstraint[][] rowConstraints;
     private BlockConstraint[][] columnConstraints;
     private CellState[][] grid;
-    private Stack<CellState[][]> moveHistory; // For undo functionality
+    private int columns;
     private Map<CellState, Color> colourMap; // For storing the colours in the puzzle
 
+    // For undo functionality, a log of cell changes rather than copies of the grid.
+    // Each entry packs the cell index (row * columns + column) with its old and new state,
+    // and move m is made up of the entries from moveStarts[m] up to the start of the next move.
+    private static final CellState[] STATES = CellState.values();
+    private long[] history;
+    private int historySize;
+    private int[] moveStarts;
+    private int moveCount;
+    private int[] loggedAt; // For each cell, where it was last logged, so a move logs each cell at most once
+
+    // Whether each line currently matches its constraints, kept up to date as cells change so isSolved is O(1)
+    private boolean[] rowSatisfied;
+    private boolean[] columnSatisfied;
+    private int unsatisfiedLines;
+    // The lines changed by a rollback or a batch of cells, so each is rechecked once however many of its cells changed
+    private BitSet touchedRows;
+    private BitSet touchedColumns;
+
     public Nonogram(String name, Map<CellState, Color> colourMap, BlockConstraint[][] rowConstraints, BlockConstraint[][] columnConstraints, int rows, int columns) {
         this.name = name;
         this.colourMap = colourMap;
         this.rowConstraints = rowConstraints;
         this.columnConstraints = columnConstraints;
         this.grid = new CellState[rows][columns];
-        this.moveHistory = new Stack<>();
-
-        initialiseGrid();
+        this.columns = columns;
+        this.history = new long[16];
+        this.moveStarts = new int[16];
+        this.loggedAt = new int[rows * columns];
+        Arrays.fill(loggedAt, -1);
+        this.rowSatisfied = new boolean[rows];
+        this.columnSatisfied = new boolean[columns];
+        this.touchedRows = new BitSet(rows);
+        this.touchedColumns = new BitSet(columns);
 
         // Input Validation
         if (rowConstraints == null || columnConstraints == null) {
             throw new IllegalArgumentException("Constraints cannot be null");
         }
+
+        initialiseGrid();
     }
 
     /**
@@ -53,7 +79,7 @@ public class Nonogram {
      */
     public void resetGrid(){
         initialiseGrid();
-        moveHistory.clear(); // Clear undo history
+        clearHistory(); // Clear undo history
     }
 
     /**
@@ -65,7 +91,7 @@ public class Nonogram {
     }
 
     /**
-     * Gets a copy of the current grid in order to add to the stack of moves.
+     * Gets a copy of the current grid.
      * @return a copy of the current grid
      */
     public CellState[][] getGridCopy() {
@@ -77,19 +103,86 @@ public class Nonogram {
     }
 
     /**
-     * Saves the current state of the grid to the stack of moves. For undo functionality.
+     * Makes a copy of the puzzle with the same constraints, colours and grid, but no move history.
+     * The constraints and colours are shared with this puzzle rather than copied.
+     * @return a copy of the puzzle which can be changed separately
+     */
+    public Nonogram copy() {
+        Nonogram copy = new Nonogram(name, colourMap, rowConstraints, columnConstraints, grid.length, columns);
+        for (int i = 0; i < grid.length; i++) {
+            System.arraycopy(grid[i], 0, copy.grid[i], 0, columns);
+        }
+        copy.refreshSatisfiedLines();
+        return copy;
+    }
+
+    /**
+     * Saves the current state of the grid as a point to undo back to, by starting a new move.
+     * Every cell changed after this is logged in the new move until the next one is started.
      */
     public void saveState() {
-        moveHistory.push(getGridCopy());
+        if (moveCount == moveStarts.length) {
+            moveStarts = Arrays.copyOf(moveStarts, moveCount * 2);
+        }
+        moveStarts[moveCount++] = historySize;
+    }
+
+    /**
+     * Marks the current point in the change log, so the grid can be rolled back to it later, for example before a guess.
+     * This starts a new move, so every cell changed after the mark is logged.
+     * @return the mark, to pass to rollback() or keepChanges()
+     */
+    public int mark() {
+        saveState();
+        return moveCount - 1;
+    }
+
+    /**
+     * Puts back every cell changed since a mark, and drops the moves made since it, including the mark itself.
+     * Only the changed cells are touched, so this costs the number of changes rather than the size of the grid.
+     * @param mark a mark from mark() which has not been rolled back or kept yet
+     */
+    public void rollback(int mark) {
+        rewindTo(moveStarts[mark]);
+        moveCount = mark;
+    }
+
+    /**
+     * Keeps the changes made since a mark, merging every move made since it into one, so they are undone together.
+     * If nothing has changed since the mark, the move it started is dropped, so there is no empty move to undo.
+     * @param mark a mark from mark() which has not been rolled back or kept yet
+     */
+    public void keepChanges(int mark) {
+        moveCount = historySize == moveStarts[mark] ? mark : mark + 1;
+    }
+
+    /**
+     * Gets the cells changed since a mark from the change log, so this costs the number of changes rather than the size of the grid.
+     * @param mark a mark from mark() which has not been rolled back or kept yet
+     * @return each changed cell once, packed as (row * columns + column) << 3 | the ordinal of its current state
+     */
+    public int[] changesSince(int mark) {
+        int start = moveStarts[mark];
+        int[] changes = new int[historySize - start];
+        int count = 0;
+        for (int k = start; k < historySize; k++) {
+            int cell = (int) (history[k] >>> 16);
+            // A cell logged again in a later move is only taken from its last entry, and one set back is left out
+            if (loggedAt[cell] == k && ((history[k] >>> 8) & 0xFF) != (history[k] & 0xFF)) {
+                changes[count++] = cell << 3 | (int) (history[k] & 0xFF);
+            }
+        }
+        return count == changes.length ? changes : Arrays.copyOf(changes, count);
     }
 
     /**
      * Undo the last move made. The move must have been made after loading the puzzle for it to be on the stack.
+     * Only the cells changed in that move are put back.
      * @return true if the last move has been successfully undone, false if there are no moves left to undo
      */
     public boolean undo() {
-        if (!moveHistory.isEmpty()) {
-            grid = moveHistory.pop();
+        if (moveCount > 0) {
+            rewindTo(moveStarts[--moveCount]);
             return true;
         }
         return false; // No moves left to undo
@@ -97,27 +190,141 @@ public class Nonogram {
 
     /**
      * Reset the grid to its state when the puzzle or moves were loaded.
+     * Rewinds the whole change log in one pass, newest change first.
      * @return True if the moves were successfully reset, false if there were no moves to reset
      */
     public boolean resetMoves() {
-        if (moveHistory.isEmpty()) {
+        if (moveCount == 0) {
             return false;
         }
-        while (!moveHistory.isEmpty()) {
-            grid = moveHistory.pop();
-        }
+        rewindTo(0);
+        moveCount = 0;
         return true;
     }
 
+    /**
+     * Puts back the old state of every logged change from the end of the log back to a given entry,
+     * and drops those entries from the log.
+     * Each line with a changed cell is rechecked once at the end, rather than once for every change in it.
+     * @param start the first log entry to undo
+     */
+    private void rewindTo(int start) {
+        for (int k = historySize - 1; k >= start; k--) {
+            int cell = (int) (history[k] >>> 16);
+            int row = cell / columns;
+            int column = cell % columns;
+            grid[row][column] = STATES[(int) (history[k] >>> 8) & 0xFF];
+            touchedRows.set(row);
+            touchedColumns.set(column);
+        }
+        historySize = start;
+        updateTouchedLines();
+    }
+
+    /**
+     * Rechecks every line marked as touched against its constraints, and clears the marks.
+     */
+    private void updateTouchedLines() {
+        for (int row = touchedRows.nextSetBit(0); row >= 0; row = touchedRows.nextSetBit(row + 1)) {
+            updateRowSatisfied(row);
+        }
+        for (int column = touchedColumns.nextSetBit(0); column >= 0; column = touchedColumns.nextSetBit(column + 1)) {
+            updateColumnSatisfied(column);
+        }
+        touchedRows.clear();
+        touchedColumns.clear();
+    }
+
+    /**
+     * Empties the undo history.
+     */
+    private void clearHistory() {
+        historySize = 0;
+        moveCount = 0;
+    }
+
+    /**
+     * Checks whether a row matches its constraints, and updates the count of unsatisfied lines if that has changed.
+     * @param row the row to check
+     */
+    private void updateRowSatisfied(int row) {
+        boolean satisfied = isLineSolved(grid[row], rowConstraints[row]);
+        if (satisfied != rowSatisfied[row]) {
+            rowSatisfied[row] = satisfied;
+            unsatisfiedLines += satisfied ? -1 : 1;
+        }
+    }
+
+    /**
+     * Checks whether a column matches its constraints, and updates the count of unsatisfied lines if that has changed.
+     * @param column the column to check
+     */
+    private void updateColumnSatisfied(int column) {
+        boolean satisfied = isColumnSolved(column);
+        if (satisfied != columnSatisfied[column]) {
+            columnSatisfied[column] = satisfied;
+            unsatisfiedLines += satisfied ? -1 : 1;
+        }
+    }
+
+    /**
+     * Rechecks every line against its constraints, after the whole grid has changed.
+     */
+    private void refreshSatisfiedLines() {
+        unsatisfiedLines = rowSatisfied.length + columnSatisfied.length;
+        Arrays.fill(rowSatisfied, false);
+        Arrays.fill(columnSatisfied, false);
+        for (int i = 0; i < rowSatisfied.length; i++) {
+            updateRowSatisfied(i);
+        }
+        for (int j = 0; j < columnSatisfied.length; j++) {
+            updateColumnSatisfied(j);
+        }
+    }
+
+    /**
+     * Changes a single cell, logging the change in the current move if there is one to undo back to.
+     * The caller is responsible for updating whether the cell's row and column are satisfied.
+     * A cell changed more than once in the same move keeps its first old state, and only its new state is updated.
+     * @param row the row of the cell
+     * @param column the column of the cell
+     * @param cellState the state to be set
+     */
+    private void writeCell(int row, int column, CellState cellState) {
+        CellState oldState = grid[row][column];
+        if (oldState == cellState) {
+            return;
+        }
+        if (moveCount > 0) {
+            int cell = row * columns + column;
+            int at = loggedAt[cell];
+            if (at >= moveStarts[moveCount - 1] && at < historySize && (int) (history[at] >>> 16) == cell) {
+                history[at] = (history[at] & ~0xFFL) | cellState.ordinal();
+            } else {
+                if (historySize == history.length) {
+                    history = Arrays.copyOf(history, historySize * 2);
+                }
+                history[historySize] = ((long) cell << 16) | (oldState.ordinal() << 8) | cellState.ordinal();
+                loggedAt[cell] = historySize++;
+            }
+        }
+        grid[row][column] = cellState;
+    }
+
     /**
      * Creates a grid of the puzzle size, filled with UNKNOWN cell state.
      */
     public void initialiseGrid() {
         for (int i = 0; i < grid.length; i++) {
             for (int j = 0; j < grid[0].length; j++) {
-                grid[i][j] = CellState.UNKNOWN;
+                if (grid[i][j] == null) {
+                    grid[i][j] = CellState.UNKNOWN;
+                } else {
+                    writeCell(i, j, CellState.UNKNOWN);
+                }
             }
         }
+        refreshSatisfiedLines();
     }
 
     /**
@@ -141,8 +348,106 @@ public class Nonogram {
         validateCoordinates(row, column);
         if (grid[row][column] != cellState) { // Only save if state changes
             saveState(); // Save current state before changing
-            grid[row][column] = cellState;
+            writeCell(row, column, cellState);
+            updateRowSatisfied(row);
+            updateColumnSatisfied(column);
+        }
+    }
+
+    /**
+     * Set the cell states for a whole row in one go.
+     * @param row the row to set
+     * @param states the new state for each cell in the row
+     * @param recordMove true to save the grid once before the first change, so the row is undone as a single move,
+     *                   false to add the changes to the current move instead (for the solver's own writes,
+     *                   which start a move of their own with mark() so they are never added to the player's last move)
+     * @return the number of cells that changed
+     */
+    public int setRowStates(int row, CellState[] states, boolean recordMove) {
+        validateCoordinates(row, 0);
+        if (states.length != grid[0].length) {
+            throw new IllegalArgumentException("Row has " + states.length + " cells, expected " + grid[0].length);
+        }
+        int changed = 0;
+        for (int j = 0; j < states.length; j++) {
+            if (grid[row][j] != states[j]) {
+                if (recordMove && changed == 0) {
+                    saveState();
+                }
+                writeCell(row, j, states[j]);
+                updateColumnSatisfied(j);
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            updateRowSatisfied(row);
+        }
+        return changed;
+    }
+
+    /**
+     * Set the cell states for a whole column in one go.
+     * @param column the column to set
+     * @param states the new state for each cell in the column
+     * @param recordMove true to save the grid once before the first change, so the column is undone as a single move,
+     *                   false to add the changes to the current move instead (for the solver's own writes,
+     *                   which start a move of their own with mark() so they are never added to the player's last move)
+     * @return the number of cells that changed
+     */
+    public int setColumnStates(int column, CellState[] states, boolean recordMove) {
+        validateCoordinates(0, column);
+        if (states.length != grid.length) {
+            throw new IllegalArgumentException("Column has " + states.length + " cells, expected " + grid.length);
         }
+        int changed = 0;
+        for (int i = 0; i < states.length; i++) {
+            if (grid[i][column] != states[i]) {
+                if (recordMove && changed == 0) {
+                    saveState();
+                }
+                writeCell(i, column, states[i]);
+                updateRowSatisfied(i);
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            updateColumnSatisfied(column);
+        }
+        return changed;
+    }
+
+    /**
+     * Set the cell states for any set of cells in one go.
+     * Cell k is at (rows[k], columns[k]) and is set to states[k].
+     * @param rows the row of each cell
+     * @param columns the column of each cell
+     * @param states the new state for each cell
+     * @param recordMove true to save the grid once before the first change, so the cells are undone as a single move,
+     *                   false to add the changes to the current move instead (for the solver's own writes,
+     *                   which start a move of their own with mark() so they are never added to the player's last move)
+     * @return the number of cells that changed
+     */
+    public int setCellStates(int[] rows, int[] columns, CellState[] states, boolean recordMove) {
+        if (rows.length != columns.length || rows.length != states.length) {
+            throw new IllegalArgumentException("Rows, columns and states must be the same length");
+        }
+        for (int k = 0; k < rows.length; k++) {
+            validateCoordinates(rows[k], columns[k]);
+        }
+        int changed = 0;
+        for (int k = 0; k < rows.length; k++) {
+            if (grid[rows[k]][columns[k]] != states[k]) {
+                if (recordMove && changed == 0) {
+                    saveState();
+                }
+                writeCell(rows[k], columns[k], states[k]);
+                touchedRows.set(rows[k]);
+                touchedColumns.set(columns[k]);
+                changed++;
+            }
+        }
+        updateTouchedLines();
+        return changed;
     }
 
     /**
@@ -200,78 +505,82 @@ public class Nonogram {
 
     /**
      * Checks whether the puzzle is solved.
+     * Each line's state is kept up to date as cells change, so this is a constant time check.
      * @return true if the puzzle is solved, false if not
      */
     public boolean isSolved() {
-        // Check all rows
-        for (int i = 0; i < grid.length; i++) {
-            if (!isLineSolved(grid[i], rowConstraints[i])) {
-                return false;
-            }
-        }
-
-        // Check all columns
-        for (int j = 0; j < grid[0].length; j++) {
-            CellState[] column = new CellState[grid.length];
-            for (int i = 0; i < grid.length; i++) {
-                column[i] = grid[i][j];
-            }
-            if (!isLineSolved(column, columnConstraints[j])) {
-                return false;
-            }
-        }
-        return true;
+        return unsatisfiedLines == 0;
     }
 
     /**
      * Checks if an individual line is solved.
+     * Walks the line and the constraints together, so it stops at the first block that doesn't match and allocates nothing.
+     * UNKNOWN cells are treated as empty.
      * @param line holds a list of lines in the puzzle to be iterated through
      * @param constraints contains the contraints of the puzzle
      * @return true if the line is solved, false if not
      */
     public boolean isLineSolved(CellState[] line, BlockConstraint[] constraints) {
-        List<BlockConstraint> actualBlocks = new ArrayList<>();
-        int currentBlockLength = 0;
-        CellState currentColor = null;
-        
-        for (CellState cell : line) {
-            if (cell != CellState.EMPTY && cell != CellState.UNKNOWN) {
-                if (currentColor == null) {
-                    currentColor = cell;
-                    currentBlockLength = 1;
-                } else if (cell == currentColor) {
-                    currentBlockLength++;
-                } else {
-                    actualBlocks.add(new BlockConstraint(currentBlockLength, currentColor));
-                    currentColor = cell;
-                    currentBlockLength = 1;
+        int block = 0; // The next constraint to match
+        int i = 0;
+        while (i < line.length) {
+            CellState cell = line[i];
+            if (cell == CellState.EMPTY || cell == CellState.UNKNOWN) {
+                i++;
+                continue;
+            }
+
+            // Start of a coloured block, which must be the next constraint's colour and length
+            if (block == constraints.length || constraints[block].getState() != cell) {
+                return false;
+            }
+            int remaining = constraints[block].getLength();
+            while (i < line.length && line[i] == cell) {
+                if (--remaining < 0) {
+                    return false; // Block is too long
                 }
-            } else if (currentColor != null) {
-                // End of a colored block
-                actualBlocks.add(new BlockConstraint(currentBlockLength, currentColor));
-                currentColor = null;
-                currentBlockLength = 0;
+                i++;
             }
+            if (remaining != 0) {
+                return false; // Block is too short
+            }
+            block++;
         }
-        
-        // Add the last block if it exists
-        if (currentColor != null) {
-            actualBlocks.add(new BlockConstraint(currentBlockLength, currentColor));
-        }
-        
-        // Compare with constraints
-        if (actualBlocks.size() != constraints.length) {
-            return false;
-        }
-        
-        for (int i = 0; i < constraints.length; i++) {
-            if (actualBlocks.get(i).getLength() != constraints[i].getLength() || 
-                actualBlocks.get(i).getState() != constraints[i].getState()) {
+        return block == constraints.length;
+    }
+
+    /**
+     * Checks if a column of the grid is solved, reading it in place rather than copying it out of the grid.
+     * @param column the column to check
+     * @return true if the column is solved, false if not
+     */
+    public boolean isColumnSolved(int column) {
+        BlockConstraint[] constraints = columnConstraints[column];
+        int block = 0;
+        int i = 0;
+        while (i < grid.length) {
+            CellState cell = grid[i][column];
+            if (cell == CellState.EMPTY || cell == CellState.UNKNOWN) {
+                i++;
+                continue;
+            }
+
+            if (block == constraints.length || constraints[block].getState() != cell) {
                 return false;
             }
+            int remaining = constraints[block].getLength();
+            while (i < grid.length && grid[i][column] == cell) {
+                if (--remaining < 0) {
+                    return false;
+                }
+                i++;
+            }
+            if (remaining != 0) {
+                return false;
+            }
+            block++;
         }
-        
-        return true;
+        return block == constraints.length;
     }
 
     /**
@@ -281,33 +590,41 @@ public class Nonogram {
      */
     public void saveMoves(String filePath) throws IOException {
         try (FileWriter file = new FileWriter(filePath)) {
-            JSONObject json = new JSONObject();
-            json.put("name", this.name);
-            
-            // Save the grid state
-            JSONArray gridArray = new JSONArray();
-            for (CellState[] row : grid) {
-                JSONArray rowArray = new JSONArray();
-                for (CellState cell : row) {
-                    JSONObject cellObj = new JSONObject();
-                    cellObj.put("state", cell.name());
-                    rowArray.put(cellObj);
-                }
-                gridArray.put(rowArray);
+            file.write(movesToJson().toString(2)); // Pretty print with 2-space indent
+        }
+    }
+
+    /**
+     * Builds the JSON that saveMoves writes, with the puzzle's name, grid and colours.
+     * @return a JSON object that loadMoves can read back
+     */
+    public JSONObject movesToJson() {
+        JSONObject json = new JSONObject();
+        json.put("name", this.name);
+
+        // Save the grid state
+        JSONArray gridArray = new JSONArray();
+        for (CellState[] row : grid) {
+            JSONArray rowArray = new JSONArray();
+            for (CellState cell : row) {
+                JSONObject cellObj = new JSONObject();
+                cellObj.put("state", cell.name());
+                rowArray.put(cellObj);
             }
-            json.put("grid", gridArray);
-            
-            // Save color map if it's a color puzzle
-            if (!colourMap.isEmpty()) {
-                JSONObject statesObj = new JSONObject();
-                for (Map.Entry<CellState, Color> entry : colourMap.entrySet()) {
-                    statesObj.put(entry.getKey().name(), 
-                        String.format("#%06X", 0xFFFFFF & entry.getValue().getRGB()));
-                }
-                json.put("states", statesObj);
+            gridArray.put(rowArray);
+        }
+        json.put("grid", gridArray);
+
+        // Save color map if it's a color puzzle
+        if (!colourMap.isEmpty()) {
+            JSONObject statesObj = new JSONObject();
+            for (Map.Entry<CellState, Color> entry : colourMap.entrySet()) {
+                statesObj.put(entry.getKey().name(),
+                    String.format("#%06X", 0xFFFFFF & entry.getValue().getRGB()));
             }
-            file.write(json.toString(2)); // Pretty print with 2-space indent
+            json.put("states", statesObj);
         }
+        return json;
     }
 
     /**
@@ -325,7 +642,6 @@ public class Nonogram {
     
         // Clear current grid and history
         resetGrid();
-        moveHistory.clear();
     
         // Load color map if present
         if (json.has("states")) {
@@ -348,9 +664,10 @@ public class Nonogram {
                 JSONArray rowArray = gridArray.getJSONArray(i);
                 for (int j = 0; j < rowArray.length(); j++) {
                     JSONObject cell = rowArray.getJSONObject(j);
-                    grid[i][j] = CellState.valueOf(cell.getString("state"));
+                    writeCell(i, j, CellState.valueOf(cell.getString("state")));
                 }
             }
         }
+        refreshSatisfiedLines();
     }
 }
\ No newline at end of file
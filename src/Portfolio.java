@@ -0,0 +1,266 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs several solving strategies at once, each on its own thread with its own copy of the puzzle.
+ * The first strategy to finish with an answer (a solution, or proof there is none) wins and the rest are cancelled.
+ * No single strategy is best for every puzzle: line solving alone is quickest when it is enough,
+ * while other puzzles need probing or guessing.
+ */
+public class Portfolio {
+    private final List<Strategy> strategies;
+
+    /**
+     * Creates a portfolio of the default strategies.
+     */
+    public Portfolio() {
+        this(defaultStrategies());
+    }
+
+    /**
+     * Creates a portfolio of the given strategies.
+     *
+     * @param strategies The strategies to race against each other.
+     */
+    public Portfolio(List<Strategy> strategies) {
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("A portfolio needs at least one strategy");
+        }
+        this.strategies = new ArrayList<>(strategies);
+    }
+
+    /**
+     * Gets the default strategies: line solving alone, line solving with probing,
+     * guessing with each of the branching heuristics, and the SAT backend.
+     *
+     * @return a new list of the default strategies
+     */
+    public static List<Strategy> defaultStrategies() {
+        return new ArrayList<>(Arrays.asList(
+                new Strategy("Line solving", puzzle -> new Solver(puzzle).propagate()),
+                new Strategy("Probing", puzzle -> new Prober(puzzle, new LineCache()).probe()),
+                new Strategy("Guessing on the line with fewest fills", puzzle -> guess(puzzle, Guesser.Branching.FEWEST_FILLS, true)),
+                new Strategy("Guessing on the line with fewest unknowns", puzzle -> guess(puzzle, Guesser.Branching.FEWEST_UNKNOWNS, false)),
+                new Strategy("SAT", puzzle -> {
+                    SatBackend backend = new SatBackend(puzzle);
+                    backend.solve();
+                    return backend.getStatus();
+                })));
+    }
+
+    /**
+     * Solves a puzzle with a guesser configured for one of the default strategies.
+     */
+    private static SolveStatus guess(Nonogram puzzle, Guesser.Branching branching, boolean probing) {
+        Guesser guesser = new Guesser(puzzle);
+        guesser.setBranching(branching);
+        guesser.setProbing(probing);
+        guesser.solve();
+        return guesser.getStatus();
+    }
+
+    /**
+     * Races the strategies on a puzzle with no time limit, as solve(puzzle, options) does.
+     *
+     * @param puzzle The puzzle to solve.
+     * @return The outcome of the race.
+     */
+    public Result solve(Nonogram puzzle) {
+        return solve(puzzle, new SolveOptions());
+    }
+
+    /**
+     * Races the strategies on a puzzle, then writes the winner's grid to the puzzle as one move that can be undone.
+     * If no strategy finds an answer, the grid of the strategy which found the most cells is used instead.
+     * A winner which shows the puzzle has no solution leaves the grid as it was.
+     * A strategy which throws an exception loses the race, and the others carry on.
+     *
+     * @param puzzle  The puzzle to solve.
+     * @param options The time limit and cancellation token of the race. The strategies still running when the time
+     *                runs out or the token is cancelled are interrupted, and the race ends with TIMED_OUT or CANCELLED.
+     * @return The outcome of the race.
+     */
+    public Result solve(Nonogram puzzle, SolveOptions options) {
+        long start = System.nanoTime();
+        long timeLimitNanos = options.getTimeLimitMillis() * 1_000_000;
+        CancellationToken token = options.getCancellationToken();
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("portfolio");
+        CompletionService<Attempt> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Attempt>> futures = new ArrayList<>();
+        for (Strategy strategy : strategies) {
+            Nonogram copy = puzzle.copy();
+            futures.add(completion.submit(() -> new Attempt(strategy, copy, strategy.solver.apply(copy))));
+        }
+
+        Attempt winner = null;
+        Attempt best = null; // The attempt with the most cells known, in case none of them win
+        SolveStatus stopped = null; // TIMED_OUT or CANCELLED if the race was stopped before every strategy finished
+        try {
+            int finished = 0;
+            while (finished < strategies.size() && winner == null) {
+                // Wake up now and then to check the token, as well as when the time runs out
+                long waitNanos = TimeUnit.MILLISECONDS.toNanos(100);
+                if (timeLimitNanos > 0) {
+                    long remaining = timeLimitNanos - (System.nanoTime() - start);
+                    if (remaining <= 0) {
+                        stopped = SolveStatus.TIMED_OUT;
+                        break;
+                    }
+                    waitNanos = Math.min(waitNanos, remaining);
+                }
+                if (token != null && token.isCancelled()) {
+                    stopped = SolveStatus.CANCELLED;
+                    break;
+                }
+                Future<Attempt> done = completion.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    continue;
+                }
+                finished++;
+                Attempt attempt;
+                try {
+                    attempt = done.get();
+                } catch (ExecutionException e) {
+                    continue; // The strategy failed, so it loses, and the race goes on without it
+                }
+                if (attempt.status == SolveStatus.SOLVED || attempt.status == SolveStatus.CONTRADICTION) {
+                    winner = attempt;
+                } else if (best == null || knownCells(attempt.puzzle) > knownCells(best.puzzle)) {
+                    best = attempt;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(SolveStatus.CANCELLED, null, System.nanoTime() - start);
+        } finally {
+            // Interrupt the strategies still running, which makes them stop and return CANCELLED
+            for (Future<Attempt> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Attempt used = winner != null ? winner : best;
+        if (used != null && used.status != SolveStatus.CONTRADICTION) {
+            int mark = puzzle.mark();
+            CellState[][] grid = used.puzzle.getGrid();
+            for (int i = 0; i < grid.length; i++) {
+                puzzle.setRowStates(i, grid[i], false);
+            }
+            puzzle.keepChanges(mark);
+        }
+
+        if (winner != null) {
+            return new Result(winner.status, winner.strategy.name, elapsed);
+        }
+        if (stopped != null) {
+            return new Result(stopped, null, elapsed);
+        }
+        // Every strategy gave up or failed
+        return new Result(used == null ? SolveStatus.UNSOLVED : used.status, null, elapsed);
+    }
+
+    /**
+     * Counts the cells of a puzzle which are not unknown.
+     */
+    private static int knownCells(Nonogram puzzle) {
+        int known = 0;
+        for (CellState[] row : puzzle.getGrid()) {
+            for (CellState cell : row) {
+                if (cell != CellState.UNKNOWN) {
+                    known++;
+                }
+            }
+        }
+        return known;
+    }
+
+    /**
+     * A named way of solving a puzzle. The solver changes the puzzle it is given and returns how it ended.
+     * A solver that runs for a long time should call VirtualThreads.checkpoint() now and then,
+     * and stop and return CANCELLED when it returns true.
+     */
+    public static class Strategy {
+        private final String name;
+        private final Function<Nonogram, SolveStatus> solver;
+
+        /**
+         * @param name   The name of the strategy, reported if it wins.
+         * @param solver Solves the puzzle it is given.
+         */
+        public Strategy(String name, Function<Nonogram, SolveStatus> solver) {
+            this.name = name;
+            this.solver = solver;
+        }
+
+        /**
+         * @return the name of the strategy
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The outcome of a race between the strategies.
+     */
+    public static class Result {
+        private final SolveStatus status;
+        private final String winner;
+        private final long elapsedNanos;
+
+        Result(SolveStatus status, String winner, long elapsedNanos) {
+            this.status = status;
+            this.winner = winner;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return SOLVED or CONTRADICTION from the winning strategy, TIMED_OUT or CANCELLED if the race was stopped first,
+         *         or otherwise the best status any strategy reached
+         */
+        public SolveStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the name of the winning strategy, or null if none found an answer
+         */
+        public String getWinner() {
+            return winner;
+        }
+
+        /**
+         * @return the time the race took in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+    }
+
+    /**
+     * A strategy's run on its own copy of the puzzle.
+     */
+    private static class Attempt {
+        final Strategy strategy;
+        final Nonogram puzzle;
+        final SolveStatus status;
+
+        Attempt(Strategy strategy, Nonogram puzzle, SolveStatus status) {
+            this.strategy = strategy;
+            this.puzzle = puzzle;
+            this.status = status;
+        }
+    }
+}
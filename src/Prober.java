@@ -0,0 +1,346 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Finds cells that line solving alone misses by probing.
+ * Each possible state of each unknown cell is tried in turn, and deduction is run from there.
+ * A state that leads to a contradiction is ruled out, and any cell that comes out the same in every
+ * state that survives must take that value. Each probe is rolled back with the change log when it is done,
+ * so the probes share one grid rather than copying it, and only the cells in the log are compared between
+ * states, so a probe costs the cells it changes rather than the size of the grid. The probes are independent,
+ * so they can be run in parallel, with one working copy of the grid for each group of cells.
+ */
+public class Prober {
+    private static final int[] NOTHING_FOUND = new int[0];
+
+    private Nonogram puzzle;
+    private LineCache lineCache;
+    private ForkJoinPool pool; // Used to run the probes in parallel, or null to run them one at a time
+    private SolveMonitor monitor; // Checked between probes, or null if the solve has no options
+
+    /**
+     * Constructor for the Prober class.
+     *
+     * @param puzzle    The nonogram puzzle to probe.
+     * @param lineCache The cache of line solutions to share with the probes.
+     */
+    public Prober(Nonogram puzzle, LineCache lineCache) {
+        this.puzzle = puzzle;
+        this.lineCache = lineCache;
+    }
+
+    /**
+     * Sets the pool used to run the probes in parallel.
+     * The probes in a round all start from the same grid and are merged in cell order,
+     * so the result is the same with or without a pool.
+     *
+     * @param pool The pool to use, or null to run the probes one at a time (the default).
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the monitor checked between probes and by deduction, which stops probing early
+     * if the solve it belongs to is cancelled or out of time.
+     *
+     * @param monitor The monitor of the solve, or null for none (the default).
+     */
+    void setMonitor(SolveMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Solves the puzzle as far as possible with deduction and probing.
+     * Probing is repeated until a pass over the unknown cells finds nothing new.
+     * Deduction only ever adds to what is known, so this ends on the same grid
+     * whether or not the probes are run in parallel.
+     *
+     * @return SOLVED if the puzzle is solved, CONTRADICTION if it has no solution,
+     *         UNSOLVED if probing could not finish it, CANCELLED if the thread was interrupted
+     *         or the solve cancelled, or TIMED_OUT if the solve ran out of time.
+     */
+    public SolveStatus probe() {
+        long start = System.nanoTime();
+        int mark = puzzle.mark(); // Keep the cells found as a move of their own, so they are undone together
+        SolveStatus status = probeUntilStuck();
+        puzzle.keepChanges(mark);
+        if (monitor != null) {
+            monitor.getStats().add(SolverStats.Counter.PROBING_NANOS, System.nanoTime() - start);
+        }
+        return status;
+    }
+
+    /**
+     * Alternates deduction and passes of probing until the puzzle is solved, has no solution, or a pass finds nothing.
+     */
+    private SolveStatus probeUntilStuck() {
+        SolveStatus status = deduce();
+        while (status == SolveStatus.UNSOLVED) {
+            int found = pool == null ? probeEach() : probeRound();
+            if (found < 0) {
+                return SolveStatus.CONTRADICTION;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return SolveStatus.CANCELLED;
+            }
+            SolveStatus stop = monitor == null ? null : monitor.check();
+            if (stop != null) {
+                return stop;
+            }
+            if (found == 0) {
+                break;
+            }
+            status = deduce();
+        }
+        return status;
+    }
+
+    /**
+     * Runs deduction on the whole puzzle, stopping early if the solve is cancelled or out of time.
+     */
+    private SolveStatus deduce() {
+        Solver solver = new Solver(puzzle, lineCache);
+        solver.setMonitor(monitor);
+        return solver.propagate();
+    }
+
+    /**
+     * Probes the unknown cells one at a time, setting what each probe finds straight away
+     * so that later probes start from a fuller grid.
+     *
+     * @return the number of cells set, or -1 if the puzzle has no solution
+     */
+    private int probeEach() {
+        int rows = puzzle.getRowConstraints().length;
+        int columns = puzzle.getColumnConstraints().length;
+        // The probes are made on the puzzle itself and rolled back, so no copy of the grid is needed
+        Solver probeSolver = new Solver(puzzle, lineCache);
+        Solver foundSolver = new Solver(puzzle, lineCache); // Deduces from the cells found, stopping with the solve
+        foundSolver.setMonitor(monitor);
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (puzzle.getCellState(i, j) != CellState.UNKNOWN) {
+                    continue;
+                }
+                if (VirtualThreads.checkpoint() || (monitor != null && monitor.check() != null)) {
+                    return count; // Stop early, leaving the cells found so far
+                }
+                int[] result = probeCell(puzzle, probeSolver, i, j);
+                if (result == null) {
+                    return -1; // Every state of this cell leads to a contradiction
+                }
+                if (result.length > 0) {
+                    setCells(result, result.length);
+                    count += result.length;
+                    // Only the lines of the cells found can have anything new to deduce
+                    int[] cellRows = new int[result.length];
+                    int[] cellColumns = new int[result.length];
+                    for (int k = 0; k < result.length; k++) {
+                        cellRows[k] = (result[k] >>> 3) / columns;
+                        cellColumns[k] = (result[k] >>> 3) % columns;
+                    }
+                    SolveStatus status = foundSolver.propagate(cellRows, cellColumns);
+                    if (status == SolveStatus.CONTRADICTION) {
+                        return -1;
+                    }
+                    if (status == SolveStatus.SOLVED) {
+                        return count;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Probes every unknown cell in the grid at once on the pool, then sets all the cells the probes found.
+     * The cells are shared out between a few tasks for each worker, and each task probes its cells
+     * on its own copy of the grid. A task stops early, leaving the rest of its cells unprobed,
+     * if the solve is cancelled or out of time or the thread that started the round is interrupted.
+     *
+     * @return the number of cells set, or -1 if the puzzle has no solution
+     */
+    private int probeRound() {
+        int rows = puzzle.getRowConstraints().length;
+        int columns = puzzle.getColumnConstraints().length;
+
+        List<Integer> cells = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (puzzle.getCellState(i, j) == CellState.UNKNOWN) {
+                    cells.add(i * columns + j);
+                }
+            }
+        }
+
+        int[][] results = new int[cells.size()][];
+        Arrays.fill(results, NOTHING_FOUND); // For cells left unprobed if the round stops early
+        Thread caller = Thread.currentThread();
+        int taskCount = Math.min(cells.size(), pool.getParallelism() * 4);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < taskCount; t++) {
+            final int first = t;
+            tasks.add(pool.submit(() -> {
+                Nonogram work = puzzle.copy();
+                gridCopyTaken();
+                try {
+                    Solver probeSolver = new Solver(work, lineCache);
+                    for (int k = first; k < cells.size(); k += taskCount) {
+                        if (caller.isInterrupted() || (monitor != null && monitor.check() != null)) {
+                            return;
+                        }
+                        results[k] = probeCell(work, probeSolver, cells.get(k) / columns, cells.get(k) % columns);
+                        if (results[k] == null) {
+                            return; // The puzzle has no solution, so the rest of the round doesn't matter
+                        }
+                    }
+                } finally {
+                    gridCopyReleased();
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        // Merge what each probe found, in cell order
+        CellState[] found = new CellState[rows * columns];
+        int[] merged = new int[rows * columns];
+        int count = 0;
+        for (int[] result : results) {
+            if (result == null) {
+                return -1; // Every state of this cell leads to a contradiction
+            }
+            for (int packed : result) {
+                int cell = packed >>> 3;
+                CellState state = CellState.values()[packed & 7];
+                if (found[cell] == null) {
+                    found[cell] = state;
+                    merged[count++] = packed;
+                } else if (found[cell] != state) {
+                    return -1; // Two probes force different states, so there is no solution
+                }
+            }
+        }
+        setCells(merged, count);
+        return count;
+    }
+
+    /**
+     * Sets cells found by probing.
+     *
+     * @param packed The cells to set, packed as returned by probeCell.
+     * @param count  The number of cells to set from the start of the array.
+     */
+    private void setCells(int[] packed, int count) {
+        int columns = puzzle.getColumnConstraints().length;
+        int[] cellRows = new int[count];
+        int[] cellColumns = new int[count];
+        CellState[] states = new CellState[count];
+        for (int k = 0; k < count; k++) {
+            int cell = packed[k] >>> 3;
+            cellRows[k] = cell / columns;
+            cellColumns[k] = cell % columns;
+            states[k] = CellState.values()[packed[k] & 7];
+        }
+        puzzle.setCellStates(cellRows, cellColumns, states, false);
+        if (monitor != null) {
+            monitor.getStats().add(SolverStats.Counter.CELLS_FIXED_BY_PROBING, count);
+        }
+    }
+
+    /**
+     * Tries each possible state of a cell and finds the unknown cells that come out the same in every probe that survives.
+     * Each probe is made on the working grid after marking it, and rolled back afterwards,
+     * so the working grid is the same afterwards as before. The cells the first surviving probe changed are
+     * taken from the change log, and each later survivor keeps only those it set to the same state,
+     * so this never looks at the cells no probe changed.
+     *
+     * @param work        The grid to probe on, which must be as far as deduction can take it.
+     * @param probeSolver A solver for the working grid, without a monitor so each probe is deduced in full.
+     * @param row         The row of the cell to probe.
+     * @param column      The column of the cell to probe.
+     * @return The cells forced by the probes, each packed as (row * columns + column) << 3 | state,
+     *         or null if every state of the cell leads to a contradiction.
+     */
+    private int[] probeCell(Nonogram work, Solver probeSolver, int row, int column) {
+        int columns = puzzle.getColumnConstraints().length;
+        int[] agreed = null; // The cells every surviving probe so far set to the same state, packed as returned below
+        int agreedCount = 0;
+
+        for (CellState state : candidates(row, column)) {
+            int mark = work.mark();
+            try {
+                work.setCellStates(new int[] {row}, new int[] {column}, new CellState[] {state}, false);
+                if (probeSolver.propagate(row, column) == SolveStatus.CONTRADICTION) {
+                    continue;
+                }
+
+                if (agreed == null) {
+                    agreed = work.changesSince(mark);
+                    agreedCount = agreed.length;
+                } else {
+                    int kept = 0;
+                    for (int k = 0; k < agreedCount; k++) {
+                        int cell = agreed[k] >>> 3;
+                        if (work.getCellState(cell / columns, cell % columns).ordinal() == (agreed[k] & 7)) {
+                            agreed[kept++] = agreed[k];
+                        }
+                    }
+                    agreedCount = kept;
+                }
+            } finally {
+                work.rollback(mark);
+            }
+        }
+        if (agreed == null) {
+            return null;
+        }
+        return agreedCount == agreed.length ? agreed : Arrays.copyOf(agreed, agreedCount);
+    }
+
+    /**
+     * Records a copy of the grid made for probing with the monitor, if there is one.
+     */
+    private void gridCopyTaken() {
+        if (monitor != null) {
+            monitor.gridCopyTaken();
+        }
+    }
+
+    /**
+     * Records that probing has finished with a copy of the grid.
+     */
+    private void gridCopyReleased() {
+        if (monitor != null) {
+            monitor.gridCopyReleased();
+        }
+    }
+
+    /**
+     * Gets the states a cell could take: empty, or a colour used in both its row and its column.
+     */
+    private List<CellState> candidates(int row, int column) {
+        List<CellState> candidates = new ArrayList<>();
+        candidates.add(CellState.EMPTY);
+        for (BlockConstraint rowBlock : puzzle.getRowConstraints()[row]) {
+            if (candidates.contains(rowBlock.getState())) {
+                continue;
+            }
+            for (BlockConstraint columnBlock : puzzle.getColumnConstraints()[column]) {
+                if (columnBlock.getState() == rowBlock.getState()) {
+                    candidates.add(rowBlock.getState());
+                    break;
+                }
+            }
+        }
+        return candidates;
+    }
+}
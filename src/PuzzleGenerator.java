@@ -0,0 +1,539 @@
+package src;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generates puzzles of any size from seeded grids, so that large puzzles can be made for benchmarks
+ * and the same puzzles made again later. A grid is made from a field of values, one per cell:
+ * uniform noise for random grids, blurred noise for blob-like grids, or the darkness of a scaled image.
+ * The cells with the highest values are filled until the grid has the density asked for, and the filled
+ * cells are split into colours in the same way. The puzzle's constraints are then read off the grid.
+ *
+ * A target difficulty can be set, in which case grids are generated until one of them gives a puzzle
+ * which needs that much work. After each miss the density is nudged, up if the puzzle was too hard
+ * and down if it was too easy, as fuller grids give longer blocks which tell line solving more.
+ *
+ * Usage: java -cp "lib/*":out src.PuzzleGenerator [--seed N] [--size ROWSxCOLUMNS] [--density D] [--colours N]
+ *            [--shape random|blobs|image] [--image file] [--difficulty any|line-solving|probing|search] output.json
+ *        java -cp "lib/*":out src.PuzzleGenerator --corpus directory
+ */
+public class PuzzleGenerator {
+    private static final CellState[] COLOURS = {CellState.COLOUR_1, CellState.COLOUR_2, CellState.COLOUR_3,
+            CellState.COLOUR_4};
+    private static final double DENSITY_STEP = 0.05; // How far the density is nudged after a puzzle of the wrong difficulty
+
+    // The puzzles written by --corpus: every shape here at every size, all of them line solvable so that
+    // every solver finishes them and the times for different sizes can be compared
+    private static final int[] CORPUS_SIZES = {25, 50, 100, 200, 500};
+    private static final Object[][] CORPUS_KINDS = {
+            {Shape.RANDOM, 1, 0.8},
+            {Shape.BLOBS, 1, 0.6},
+            {Shape.BLOBS, 4, 0.6}};
+    private static final long CORPUS_SEED = 1006;
+
+    /**
+     * Where the values that decide which cells are filled come from.
+     */
+    public enum Shape {
+        RANDOM, // Each cell is filled independently of the others
+        BLOBS, // Filled cells clump together into blobs, more like a picture
+        IMAGE // The darkest parts of an image are filled
+    }
+
+    /**
+     * How much work a puzzle needs, from least to most.
+     */
+    public enum Difficulty {
+        ANY, // Any puzzle will do, so the difficulty isn't checked
+        LINE_SOLVING, // Line solving alone solves the puzzle
+        PROBING, // Line solving gets stuck, but probing solves the puzzle
+        SEARCH // Probing gets stuck too, so the puzzle needs guessing or the SAT backend, and may have many solutions
+    }
+
+    private final long seed;
+    private int rows = 20;
+    private int columns = 20;
+    private double density = 0.6;
+    private int colours = 1;
+    private Shape shape = Shape.RANDOM;
+    private BufferedImage image;
+    private Difficulty difficulty = Difficulty.ANY;
+    private int maxAttempts = 50;
+
+    /**
+     * Creates a generator which makes 20x20 black and white random puzzles, 60% filled, of any difficulty.
+     *
+     * @param seed The seed for the random numbers. The same seed and settings always give the same puzzle.
+     */
+    public PuzzleGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param rows    The number of rows in the puzzles, at least 1.
+     * @param columns The number of columns in the puzzles, at least 1.
+     */
+    public void setSize(int rows, int columns) {
+        if (rows < 1 || columns < 1) {
+            throw new IllegalArgumentException("A puzzle needs at least one row and column, not " + rows + "x" + columns);
+        }
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * @param density The fraction of cells to fill, between 0 and 1 (0.6 by default).
+     *                With a target difficulty this is where the search starts.
+     */
+    public void setDensity(double density) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("The density must be between 0 and 1, not " + density);
+        }
+        this.density = density;
+    }
+
+    /**
+     * @param colours The number of colours to fill cells with, from 1 (black and white) to 4.
+     */
+    public void setColours(int colours) {
+        if (colours < 1 || colours > COLOURS.length) {
+            throw new IllegalArgumentException("The number of colours must be from 1 to " + COLOURS.length + ", not " + colours);
+        }
+        this.colours = colours;
+    }
+
+    /**
+     * @param shape Where the values that decide which cells are filled come from (RANDOM by default).
+     */
+    public void setShape(Shape shape) {
+        this.shape = shape;
+    }
+
+    /**
+     * Sets the image used by the IMAGE shape. It is scaled to the size of the puzzle,
+     * and transparent parts count as light.
+     *
+     * @param image The image to make puzzles from.
+     */
+    public void setImage(BufferedImage image) {
+        this.image = image;
+    }
+
+    /**
+     * @param difficulty The difficulty the puzzles must have (ANY by default).
+     */
+    public void setDifficulty(Difficulty difficulty) {
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * @param maxAttempts The most grids to try when looking for a puzzle of the target difficulty (50 by default).
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Generates a puzzle with the current settings. The puzzle's grid is empty, ready to be solved.
+     *
+     * @return the generated puzzle
+     * @throws IllegalStateException if the shape is IMAGE but there is no image,
+     *                               or no puzzle of the target difficulty was found
+     */
+    public Nonogram generate() {
+        if (shape == Shape.IMAGE && image == null) {
+            throw new IllegalStateException("The IMAGE shape needs an image to be set");
+        }
+        String name = String.format("Generated %s %dx%d #%d", shape.name().toLowerCase(Locale.ROOT), rows, columns, seed);
+        Random random = new Random(seed);
+        double fill = density;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            Nonogram puzzle = puzzleFromGrid(name, generateGrid(random, fill));
+            int comparison = compareDifficulty(puzzle);
+            if (comparison == 0) {
+                return puzzle;
+            }
+            fill = Math.max(DENSITY_STEP, Math.min(1 - DENSITY_STEP, fill + (comparison > 0 ? DENSITY_STEP : -DENSITY_STEP)));
+        }
+        throw new IllegalStateException("No " + difficulty + " puzzle found in " + maxAttempts + " attempts");
+    }
+
+    /**
+     * Makes a grid with the current shape, size and colours, filling the given fraction of cells.
+     */
+    private CellState[][] generateGrid(Random random, double fill) {
+        double[] fillValues;
+        double[] colourValues;
+        if (shape == Shape.IMAGE) {
+            fillValues = imageDarkness();
+            colourValues = fillValues; // The darkest parts get the first colour, which is black by default
+        } else {
+            fillValues = noise(random);
+            colourValues = noise(random);
+            if (shape == Shape.BLOBS) {
+                int radius = Math.max(1, Math.min(rows, columns) / 25);
+                blur(fillValues, radius);
+                blur(colourValues, radius);
+            }
+        }
+
+        CellState[][] grid = new CellState[rows][columns];
+        for (CellState[] row : grid) {
+            Arrays.fill(row, CellState.EMPTY);
+        }
+        int[] order = highestFirst(fillValues);
+        int filled = (int) Math.round(fill * order.length);
+        double[] filledColourValues = new double[filled];
+        for (int k = 0; k < filled; k++) {
+            filledColourValues[k] = colourValues[order[k]];
+        }
+        // Split the filled cells into equal bands by their colour value
+        int[] colourOrder = highestFirst(filledColourValues);
+        for (int k = 0; k < filled; k++) {
+            int cell = order[colourOrder[k]];
+            grid[cell / columns][cell % columns] = COLOURS[(int) ((long) k * colours / filled)];
+        }
+        return grid;
+    }
+
+    /**
+     * Makes a value for each cell, spread evenly between 0 and 1.
+     */
+    private double[] noise(Random random) {
+        double[] values = new double[rows * columns];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Replaces each value with the average of the values within the radius of it, twice,
+     * so neighbouring cells end up with similar values.
+     */
+    private void blur(double[] values, int radius) {
+        double[] line = new double[Math.max(rows, columns)];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < rows; i++) {
+                blurLine(values, i * columns, 1, columns, radius, line);
+            }
+            for (int j = 0; j < columns; j++) {
+                blurLine(values, j, columns, rows, radius, line);
+            }
+        }
+    }
+
+    /**
+     * Blurs one row or column of the values with a running sum, using the line array as scratch space.
+     */
+    private static void blurLine(double[] values, int start, int stride, int length, int radius, double[] line) {
+        for (int k = 0; k < length; k++) {
+            line[k] = values[start + k * stride];
+        }
+        double sum = 0;
+        int count = 0;
+        for (int k = 0; k < Math.min(radius, length); k++) {
+            sum += line[k];
+            count++;
+        }
+        for (int k = 0; k < length; k++) {
+            if (k + radius < length) {
+                sum += line[k + radius];
+                count++;
+            }
+            if (k - radius - 1 >= 0) {
+                sum -= line[k - radius - 1];
+                count--;
+            }
+            values[start + k * stride] = sum / count;
+        }
+    }
+
+    /**
+     * Scales the image to the size of the puzzle and gets the darkness of each cell, from 0 for white
+     * or transparent to 1 for black.
+     */
+    private double[] imageDarkness() {
+        BufferedImage scaled = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, columns, rows, null);
+        graphics.dispose();
+
+        double[] values = new double[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                int argb = scaled.getRGB(j, i);
+                double alpha = (argb >>> 24) / 255.0;
+                double luminance = (0.299 * ((argb >> 16) & 0xFF) + 0.587 * ((argb >> 8) & 0xFF) + 0.114 * (argb & 0xFF)) / 255;
+                values[i * columns + j] = alpha * (1 - luminance);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Sorts the indexes of the values from the highest value to the lowest, breaking ties by index
+     * so that equal values (common in images) always come out in the same order.
+     */
+    private static int[] highestFirst(double[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> values[a] != values[b] ? Double.compare(values[b], values[a]) : Integer.compare(a, b));
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /**
+     * Compares how much work a puzzle needs with the target difficulty, on a copy of the puzzle.
+     * Probing is only run when the target needs it, as it can take a long time on large puzzles.
+     *
+     * @return 0 if the puzzle has the target difficulty, less than 0 if it is easier, or more than 0 if it is harder
+     */
+    private int compareDifficulty(Nonogram puzzle) {
+        if (difficulty == Difficulty.ANY) {
+            return 0;
+        }
+        Nonogram copy = puzzle.copy();
+        if (new Solver(copy).propagate() == SolveStatus.SOLVED) {
+            return Difficulty.LINE_SOLVING.compareTo(difficulty);
+        } else if (difficulty == Difficulty.LINE_SOLVING) {
+            return 1;
+        }
+        Difficulty found = new Prober(copy, new LineCache()).probe() == SolveStatus.SOLVED
+                ? Difficulty.PROBING : Difficulty.SEARCH;
+        return found.compareTo(difficulty);
+    }
+
+    /**
+     * Works out how much work a puzzle needs: whether line solving alone solves it, or probing, or neither.
+     * The puzzle's grid is not changed.
+     *
+     * @param puzzle The puzzle to classify.
+     * @return LINE_SOLVING, PROBING or SEARCH
+     */
+    public static Difficulty classify(Nonogram puzzle) {
+        Nonogram copy = puzzle.copy();
+        if (new Solver(copy).propagate() == SolveStatus.SOLVED) {
+            return Difficulty.LINE_SOLVING;
+        }
+        return new Prober(copy, new LineCache()).probe() == SolveStatus.SOLVED ? Difficulty.PROBING : Difficulty.SEARCH;
+    }
+
+    /**
+     * Makes a puzzle whose solution is the given grid, taking the constraints from its rows and columns.
+     * If the grid has more colours than black, the puzzle gets a colour for each of them.
+     *
+     * @param name The name of the puzzle.
+     * @param grid The solution, made up of EMPTY and COLOUR_1 to COLOUR_4 cells.
+     * @return a puzzle with an empty grid
+     */
+    public static Nonogram puzzleFromGrid(String name, CellState[][] grid) {
+        int rows = grid.length;
+        int columns = grid[0].length;
+        boolean colour = false;
+        BlockConstraint[][] rowConstraints = new BlockConstraint[rows][];
+        for (int i = 0; i < rows; i++) {
+            rowConstraints[i] = constraintsOf(grid[i]);
+            for (BlockConstraint block : rowConstraints[i]) {
+                colour |= block.getState() != CellState.COLOUR_1;
+            }
+        }
+        BlockConstraint[][] columnConstraints = new BlockConstraint[columns][];
+        for (int j = 0; j < columns; j++) {
+            CellState[] column = new CellState[rows];
+            for (int i = 0; i < rows; i++) {
+                column[i] = grid[i][j];
+            }
+            columnConstraints[j] = constraintsOf(column);
+        }
+        if (!colour) {
+            return new Nonogram(name, rowConstraints, columnConstraints, rows, columns);
+        }
+        return new Nonogram(name, defaultColours(), rowConstraints, columnConstraints, rows, columns);
+    }
+
+    /**
+     * Gets the colours given to generated colour puzzles, with black for COLOUR_1 as in black and white puzzles.
+     */
+    private static Map<CellState, Color> defaultColours() {
+        Map<CellState, Color> colourMap = new TreeMap<>();
+        colourMap.put(CellState.UNKNOWN, Color.decode("#ECECEC"));
+        colourMap.put(CellState.EMPTY, Color.decode("#ffffff"));
+        colourMap.put(CellState.COLOUR_1, Color.decode("#000000"));
+        colourMap.put(CellState.COLOUR_2, Color.decode("#cc3333"));
+        colourMap.put(CellState.COLOUR_3, Color.decode("#3366cc"));
+        colourMap.put(CellState.COLOUR_4, Color.decode("#339933"));
+        return colourMap;
+    }
+
+    /**
+     * Gets the blocks in a solved line.
+     */
+    private static BlockConstraint[] constraintsOf(CellState[] line) {
+        List<BlockConstraint> blocks = new ArrayList<>();
+        int i = 0;
+        while (i < line.length) {
+            if (line[i] == CellState.EMPTY) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < line.length && line[i] == line[start]) {
+                i++;
+            }
+            blocks.add(new BlockConstraint(i - start, line[start]));
+        }
+        return blocks.toArray(new BlockConstraint[0]);
+    }
+
+    /**
+     * Writes the benchmark corpus to a folder: each kind of puzzle in CORPUS_KINDS at each of the CORPUS_SIZES,
+     * and a corpus.csv listing the settings each file was made with. The files are the same every time.
+     * Each puzzle is also solved, and its solve time, peak grid copies and peak heap are printed.
+     *
+     * @param directory The folder to write to, which is created if needed.
+     * @throws IOException if a file cannot be written
+     */
+    public static void writeCorpus(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        PuzzleWriter writer = new PuzzleWriter();
+        try (FileWriter index = new FileWriter(new File(directory, "corpus.csv"))) {
+            index.write("file,shape,rows,columns,colours,density,seed,difficulty\n");
+            long seed = CORPUS_SEED;
+            for (int size : CORPUS_SIZES) {
+                for (Object[] kind : CORPUS_KINDS) {
+                    Shape shape = (Shape) kind[0];
+                    int colours = (Integer) kind[1];
+                    double density = (Double) kind[2];
+                    PuzzleGenerator generator = new PuzzleGenerator(seed);
+                    generator.setSize(size, size);
+                    generator.setShape(shape);
+                    generator.setColours(colours);
+                    generator.setDensity(density);
+                    generator.setDifficulty(Difficulty.LINE_SOLVING);
+                    String file = String.format("%s-%dx%d-%dc.json", shape.name().toLowerCase(Locale.ROOT), size, size, colours);
+                    long start = System.nanoTime();
+                    Nonogram puzzle = generator.generate();
+                    writer.writePuzzle(puzzle, new File(directory, file).getPath());
+                    index.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.2f,%d,%s%n", file, shape, size, size, colours,
+                            density, seed, Difficulty.LINE_SOLVING));
+                    reportSolve(file, (System.nanoTime() - start) / 1_000_000, puzzle.copy());
+                    seed++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves a corpus puzzle with the guesser and prints how long it took and how much memory it needed,
+     * so the corpus run gives time and memory against size.
+     * The peak heap is the most each heap pool held during the solve, added up, so it counts garbage not yet
+     * collected as well as what the solve kept, and the pools' peaks need not have come at the same moment.
+     */
+    private static void reportSolve(String file, long generateMillis, Nonogram puzzle) {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        System.gc(); // So that the generator's garbage isn't counted
+        for (MemoryPoolMXBean pool : pools) {
+            pool.resetPeakUsage();
+        }
+        SolveResult result = new Guesser(puzzle).solve(new SolveOptions());
+        long heap = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            heap += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf(Locale.ROOT, "%s (generated in %d ms; solved in %d ms, %d peak grid copies, %.1f MB peak heap)%n",
+                file, generateMillis, result.getElapsedMillis(), result.getPeakGridCopies(), heap / 1e6);
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = CORPUS_SEED;
+        List<String[]> settings = new ArrayList<>();
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--corpus") && i + 1 < args.length) {
+                writeCorpus(new File(args[++i]));
+                return;
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                settings.add(new String[] {args[i], args[++i]});
+            } else {
+                output = args[i];
+            }
+        }
+        if (output == null) {
+            System.err.println("Usage: java -cp \"lib/*\":out src.PuzzleGenerator [--seed N] [--size ROWSxCOLUMNS] [--density D]"
+                    + " [--colours N] [--shape random|blobs|image] [--image file]"
+                    + " [--difficulty any|line-solving|probing|search] output.json");
+            System.err.println("       java -cp \"lib/*\":out src.PuzzleGenerator --corpus directory");
+            System.exit(2);
+        }
+
+        PuzzleGenerator generator = new PuzzleGenerator(seed);
+        for (String[] setting : settings) {
+            String value = setting[1];
+            switch (setting[0]) {
+                case "--size":
+                    String[] size = value.split("x");
+                    generator.setSize(Integer.parseInt(size[0]), Integer.parseInt(size[size.length - 1]));
+                    break;
+                case "--density":
+                    generator.setDensity(Double.parseDouble(value));
+                    break;
+                case "--colours":
+                    generator.setColours(Integer.parseInt(value));
+                    break;
+                case "--shape":
+                    generator.setShape(Shape.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "--image":
+                    BufferedImage image = ImageIO.read(new File(value));
+                    if (image == null) {
+                        throw new IOException(value + " is not an image that can be read");
+                    }
+                    generator.setImage(image);
+                    generator.setShape(Shape.IMAGE);
+                    break;
+                case "--difficulty":
+                    generator.setDifficulty(Difficulty.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + setting[0]);
+            }
+        }
+        Nonogram puzzle = generator.generate();
+        new PuzzleWriter().writePuzzle(puzzle, output);
+        System.out.printf("%s: %s%n", output, puzzle.getName());
+    }
+}
@@ -18,7 +18,27 @@ public class PuzzleLoader {
      * @throws Exception
      */
     public Nonogram loadPuzzle(String filePath) throws IOException {
-        String content = new String(Files.readAllBytes(Paths.get(filePath)));
+        SolverEvents.PuzzleLoadEvent event = new SolverEvents.PuzzleLoadEvent();
+        event.begin();
+        Nonogram puzzle = parsePuzzle(new String(Files.readAllBytes(Paths.get(filePath))));
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.puzzleName = puzzle.getName();
+            event.rows = puzzle.getRowConstraints().length;
+            event.columns = puzzle.getColumnConstraints().length;
+            event.commit();
+        }
+        return puzzle;
+    }
+
+    /**
+     * Builds the nonogram described by puzzle JSON, in the same format as the puzzle files.
+     *
+     * @param content The JSON text of the puzzle
+     * @return A nonogram object based on the given JSON
+     * @throws org.json.JSONException if the JSON is malformed or is missing the name, rows or columns
+     */
+    public Nonogram parsePuzzle(String content) {
         JSONObject json = new JSONObject(content);
 
         String name = json.getString("name");
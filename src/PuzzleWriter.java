@@ -0,0 +1,67 @@
+package src;
+
+import java.awt.Color;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Writes a puzzle's constraints and colours in the format PuzzleLoader reads,
+ * so generated puzzles can be saved and loaded like the bundled ones.
+ */
+public class PuzzleWriter {
+    /**
+     * Writes a puzzle to a JSON file. Only the constraints and colours are written, not the grid.
+     *
+     * @param puzzle   The puzzle to write.
+     * @param filePath The path of the JSON file, which is replaced if it exists.
+     * @throws IOException if the file cannot be written
+     */
+    public void writePuzzle(Nonogram puzzle, String filePath) throws IOException {
+        try (FileWriter file = new FileWriter(filePath)) {
+            file.write(toJson(puzzle).toString());
+        }
+    }
+
+    /**
+     * Builds the JSON for a puzzle, with its name, states (if it has a colour map) and constraints.
+     *
+     * @param puzzle The puzzle to describe.
+     * @return a JSON object that PuzzleLoader can read back into the same puzzle
+     */
+    public JSONObject toJson(Nonogram puzzle) {
+        JSONObject json = new JSONObject();
+        json.put("name", puzzle.getName());
+        if (!puzzle.getColourMap().isEmpty()) {
+            JSONObject states = new JSONObject();
+            for (Map.Entry<CellState, Color> entry : puzzle.getColourMap().entrySet()) {
+                states.put(entry.getKey().name(), String.format("#%06X", 0xFFFFFF & entry.getValue().getRGB()));
+            }
+            json.put("states", states);
+        }
+        json.put("rows", constraintsJson(puzzle.getRowConstraints()));
+        json.put("columns", constraintsJson(puzzle.getColumnConstraints()));
+        return json;
+    }
+
+    /**
+     * Converts the constraints of each line to an array of blocks, each with its count and colour.
+     */
+    private JSONArray constraintsJson(BlockConstraint[][] lines) {
+        JSONArray array = new JSONArray();
+        for (BlockConstraint[] line : lines) {
+            JSONArray blocks = new JSONArray();
+            for (BlockConstraint block : line) {
+                JSONObject blockJson = new JSONObject();
+                blockJson.put("count", block.getLength());
+                blockJson.put("color", block.getState().name());
+                blocks.put(blockJson);
+            }
+            array.put(blocks);
+        }
+        return array;
+    }
+}
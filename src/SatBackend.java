@@ -0,0 +1,371 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Solves a nonogram by encoding it as a SAT problem and handing it to the built in CDCL solver.
+ * There is a variable for each state each cell could take, and a variable for each place each block could start.
+ * The clauses say that each cell takes exactly one state, each block starts in exactly one place,
+ * blocks come in order with gaps between blocks of the same colour, a block colours the cells it covers,
+ * and a coloured cell must be covered by a block of its colour.
+ * Clause learning lets it get through puzzles that need a lot of guessing much faster than the Guesser.
+ */
+public class SatBackend {
+    private Nonogram puzzle;
+    private SatSolver sat;
+    private SolveStatus status; // How the last solve ended
+    private int[][][] cellVariables; // The variable for each row, column and state, or 0 if the cell can't take that state
+
+    /**
+     * Constructor for the SatBackend class.
+     *
+     * @param puzzle The nonogram puzzle to solve.
+     */
+    public SatBackend(Nonogram puzzle) {
+        this.puzzle = puzzle;
+    }
+
+    /**
+     * @return how the last solve ended: SOLVED, CONTRADICTION if the puzzle has no solution,
+     * CANCELLED if the thread was interrupted or the solve cancelled, or TIMED_OUT if it ran out of time
+     * (null before solving)
+     */
+    public SolveStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the SAT solver used by the last solve, for its statistics, or null if line solving was enough
+     */
+    public SatSolver getSatSolver() {
+        return sat;
+    }
+
+    /**
+     * Solves the puzzle. Line solving is run first, as it is cheap and makes the encoding smaller,
+     * and the rest is encoded and solved with clause learning. The solution is written to the grid,
+     * and the whole solve is kept as one move that can be undone.
+     *
+     * @return true if the puzzle was solved, false otherwise (the reason can be found with getStatus()).
+     */
+    public boolean solve() {
+        return solve(new SolveOptions()).isSolved();
+    }
+
+    /**
+     * Solves the puzzle as solve() does, stopping early if the options' token is cancelled or time limit passes.
+     * The guess limit does not apply, and the result counts the SAT solver's decisions as its guesses.
+     *
+     * @param options The time limit, cancellation token and progress listener for this solve.
+     * @return How the solve ended, with how many cells it found, how many decisions it made and how long it took.
+     */
+    public SolveResult solve(SolveOptions options) {
+        SolveMonitor monitor = new SolveMonitor(options, puzzle, "SAT",
+                () -> sat == null ? 0 : (int) Math.min(sat.getDecisions(), Integer.MAX_VALUE));
+        int start = puzzle.mark();
+        sat = null;
+        Solver solver = new Solver(puzzle);
+        solver.setMonitor(monitor);
+        status = solver.propagate();
+        if (status == SolveStatus.UNSOLVED) {
+            sat = new SatSolver();
+            sat.setMonitor(monitor);
+            long satStart = System.nanoTime();
+            encode();
+            status = sat.solve();
+            if (status == SolveStatus.SOLVED) {
+                CellState[][] solution = decode();
+                for (int i = 0; i < solution.length; i++) {
+                    for (int j = 0; j < solution[i].length; j++) {
+                        if (puzzle.getCellState(i, j) == CellState.UNKNOWN) {
+                            monitor.getStats().increment(SolverStats.Counter.CELLS_FIXED_BY_SAT);
+                        }
+                    }
+                    puzzle.setRowStates(i, solution[i], false);
+                }
+            }
+            monitor.getStats().add(SolverStats.Counter.SAT_NANOS, System.nanoTime() - satStart);
+        }
+        puzzle.keepChanges(start);
+        return monitor.finish(status);
+    }
+
+    /**
+     * Finds the solutions of the puzzle, up to a limit, without changing its grid.
+     * After each solution is found, a clause ruling it out is added and the SAT solver is run again,
+     * keeping the clauses it has learnt. Only the cells left unknown by line solving go into these clauses,
+     * as the rest are the same in every solution.
+     *
+     * @param limit The most solutions to find.
+     * @return The solutions found, which number the limit if the puzzle has at least that many.
+     *         The status is then SOLVED if every solution was found, CONTRADICTION if there are none,
+     *         UNSOLVED if the search stopped at the limit, or CANCELLED if the thread was interrupted.
+     */
+    public List<CellState[][]> findSolutions(int limit) {
+        List<CellState[][]> solutions = new ArrayList<>();
+        Nonogram original = puzzle;
+        puzzle = original.copy();
+        try {
+            sat = null;
+            status = new Solver(puzzle).propagate();
+            if (status == SolveStatus.SOLVED) {
+                solutions.add(puzzle.getGridCopy());
+            }
+            if (status != SolveStatus.UNSOLVED || limit <= solutions.size()) {
+                return solutions;
+            }
+
+            sat = new SatSolver();
+            encode();
+            while (solutions.size() < limit && (status = sat.solve()) == SolveStatus.SOLVED) {
+                CellState[][] solution = decode();
+                solutions.add(solution);
+
+                List<Integer> different = new ArrayList<>();
+                for (int i = 0; i < solution.length; i++) {
+                    for (int j = 0; j < solution[i].length; j++) {
+                        if (puzzle.getCellState(i, j) == CellState.UNKNOWN) {
+                            different.add(-cellVariables[i][j][solution[i][j].ordinal()]);
+                        }
+                    }
+                }
+                addClause(different);
+            }
+            if (status == SolveStatus.SOLVED) {
+                status = SolveStatus.UNSOLVED; // Stopped at the limit, so there may be more
+            } else if (status == SolveStatus.CONTRADICTION && !solutions.isEmpty()) {
+                status = SolveStatus.SOLVED; // Every solution has been found
+            }
+            return solutions;
+        } finally {
+            puzzle = original;
+        }
+    }
+
+    /**
+     * Adds the variables and clauses for the whole puzzle.
+     */
+    private void encode() {
+        BlockConstraint[][] rowConstraints = puzzle.getRowConstraints();
+        BlockConstraint[][] columnConstraints = puzzle.getColumnConstraints();
+        int rows = rowConstraints.length;
+        int columns = columnConstraints.length;
+        int states = CellState.values().length;
+
+        // A cell can be empty, or a colour used in both its row and its column
+        cellVariables = new int[rows][columns][states];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                List<Integer> options = new ArrayList<>();
+                for (CellState state : CellState.values()) {
+                    if (state != CellState.UNKNOWN && used(rowConstraints[i], state) && used(columnConstraints[j], state)) {
+                        cellVariables[i][j][state.ordinal()] = sat.newVariable();
+                        options.add(cellVariables[i][j][state.ordinal()]);
+                    }
+                }
+                exactlyOne(options);
+
+                // Cells already found by line solving are fixed
+                CellState known = puzzle.getCellState(i, j);
+                if (known != CellState.UNKNOWN) {
+                    int variable = cellVariables[i][j][known.ordinal()];
+                    if (variable == 0) {
+                        sat.addClause();
+                    } else {
+                        sat.addClause(variable);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < rows; i++) {
+            encodeLine(rowConstraints[i], cellVariables[i]);
+        }
+        for (int j = 0; j < columns; j++) {
+            int[][] column = new int[rows][];
+            for (int i = 0; i < rows; i++) {
+                column[i] = cellVariables[i][j];
+            }
+            encodeLine(columnConstraints[j], column);
+        }
+    }
+
+    /**
+     * Checks whether a state is EMPTY or the colour of one of the blocks of a line.
+     */
+    private boolean used(BlockConstraint[] constraints, CellState state) {
+        if (state == CellState.EMPTY) {
+            return true;
+        }
+        for (BlockConstraint block : constraints) {
+            if (block.getState() == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the variables and clauses for one line.
+     *
+     * @param constraints The constraints for the line (row or column).
+     * @param cells       The variables for each cell of the line and each state, as in cellVariables.
+     */
+    private void encodeLine(BlockConstraint[] constraints, int[][] cells) {
+        int length = cells.length;
+        int blocks = constraints.length;
+
+        // The first and last place each block can start, from packing the blocks to each end
+        int[] earliest = new int[blocks];
+        int[] latest = new int[blocks];
+        int position = 0;
+        for (int b = 0; b < blocks; b++) {
+            position += gap(constraints, b - 1, b);
+            earliest[b] = position;
+            position += constraints[b].getLength();
+        }
+        if (position > length) {
+            sat.addClause(); // The blocks don't fit
+            return;
+        }
+        position = length;
+        for (int b = blocks - 1; b >= 0; b--) {
+            position -= gap(constraints, b, b + 1) + constraints[b].getLength();
+            latest[b] = position;
+        }
+
+        // starts[b][p] is the variable for block b starting at earliest[b] + p
+        int[][] starts = new int[blocks][];
+        for (int b = 0; b < blocks; b++) {
+            starts[b] = new int[latest[b] - earliest[b] + 1];
+            List<Integer> options = new ArrayList<>();
+            for (int p = 0; p < starts[b].length; p++) {
+                starts[b][p] = sat.newVariable();
+                options.add(starts[b][p]);
+            }
+            exactlyOne(options);
+        }
+
+        for (int b = 0; b < blocks; b++) {
+            int blockLength = constraints[b].getLength();
+            int colour = constraints[b].getState().ordinal();
+            for (int p = 0; p < starts[b].length; p++) {
+                int start = earliest[b] + p;
+
+                // The next block starts after this one, and after a gap if it is the same colour
+                if (b + 1 < blocks) {
+                    int first = start + blockLength + gap(constraints, b, b + 1) - earliest[b + 1];
+                    List<Integer> clause = new ArrayList<>();
+                    clause.add(-starts[b][p]);
+                    for (int q = Math.max(first, 0); q < starts[b + 1].length; q++) {
+                        clause.add(starts[b + 1][q]);
+                    }
+                    addClause(clause);
+                }
+
+                // The block colours every cell it covers
+                for (int i = start; i < start + blockLength; i++) {
+                    if (cells[i][colour] == 0) {
+                        sat.addClause(-starts[b][p]);
+                    } else {
+                        sat.addClause(-starts[b][p], cells[i][colour]);
+                    }
+                }
+            }
+        }
+
+        // A coloured cell must be covered by a block of that colour
+        for (int i = 0; i < length; i++) {
+            for (int state = 0; state < cells[i].length; state++) {
+                if (cells[i][state] == 0 || state == CellState.EMPTY.ordinal()) {
+                    continue;
+                }
+                List<Integer> clause = new ArrayList<>();
+                clause.add(-cells[i][state]);
+                for (int b = 0; b < blocks; b++) {
+                    if (constraints[b].getState().ordinal() != state) {
+                        continue;
+                    }
+                    int from = Math.max(earliest[b], i - constraints[b].getLength() + 1);
+                    int to = Math.min(latest[b], i);
+                    for (int start = from; start <= to; start++) {
+                        clause.add(starts[b][start - earliest[b]]);
+                    }
+                }
+                addClause(clause);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of empty cells needed between two neighbouring blocks: one if they are the same colour.
+     * Out of range blocks (before the first or after the last) need no gap.
+     */
+    private int gap(BlockConstraint[] constraints, int before, int after) {
+        if (before < 0 || after >= constraints.length) {
+            return 0;
+        }
+        return constraints[before].getState() == constraints[after].getState() ? 1 : 0;
+    }
+
+    /**
+     * Adds clauses saying exactly one of the variables is true.
+     * Small groups use a clause for each pair, and larger ones a sequential counter,
+     * which needs a few extra variables but only a linear number of clauses.
+     */
+    private void exactlyOne(List<Integer> variables) {
+        addClause(variables);
+        int count = variables.size();
+        if (count <= 5) {
+            for (int a = 0; a < count; a++) {
+                for (int b = a + 1; b < count; b++) {
+                    sat.addClause(-variables.get(a), -variables.get(b));
+                }
+            }
+            return;
+        }
+
+        // counter[k] is true if one of the first k + 1 variables is true
+        int[] counter = new int[count - 1];
+        for (int k = 0; k < count - 1; k++) {
+            counter[k] = sat.newVariable();
+        }
+        sat.addClause(-variables.get(0), counter[0]);
+        for (int k = 1; k < count - 1; k++) {
+            sat.addClause(-variables.get(k), counter[k]);
+            sat.addClause(-counter[k - 1], counter[k]);
+            sat.addClause(-variables.get(k), -counter[k - 1]);
+        }
+        sat.addClause(-variables.get(count - 1), -counter[count - 2]);
+    }
+
+    private void addClause(List<Integer> literals) {
+        int[] clause = new int[literals.size()];
+        for (int k = 0; k < clause.length; k++) {
+            clause[k] = literals.get(k);
+        }
+        sat.addClause(clause);
+    }
+
+    /**
+     * Reads the grid from the SAT solver's model.
+     */
+    private CellState[][] decode() {
+        int rows = cellVariables.length;
+        int columns = cellVariables[0].length;
+        CellState[][] grid = new CellState[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                grid[i][j] = CellState.UNKNOWN;
+                for (CellState state : CellState.values()) {
+                    int variable = cellVariables[i][j][state.ordinal()];
+                    if (variable != 0 && sat.value(variable)) {
+                        grid[i][j] = state;
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,80 @@
+package src;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.json.JSONException;
+
+/**
+ * Compares the SAT backend with the Guesser on the same puzzles.
+ * Runs both on every bundled puzzle, then on seeded random black and white puzzles sparse enough
+ * that most of them need guessing, and prints how each puzzle ended and how long it took.
+ *
+ * Usage: java -cp "lib/*":out src.SatBenchmark [size] [puzzles] [fillPercent]
+ */
+public class SatBenchmark {
+    private static final String[] PUZZLE_FOLDERS = {"puzzles", "ourpuzzles"};
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int puzzleCount = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int fillPercent = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        System.out.printf("%-28s %-18s %10s %-18s %10s%n", "puzzle", "guesser", "ms", "sat", "ms");
+        for (String folder : PUZZLE_FOLDERS) {
+            File[] files = new File(folder).listFiles((dir, name) -> name.endsWith(".json"));
+            if (files == null) {
+                continue;
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                Nonogram puzzle;
+                try {
+                    puzzle = new PuzzleLoader().loadPuzzle(file.getPath());
+                } catch (JSONException e) {
+                    System.out.printf("%-28s could not be loaded: %s%n", folder + "/" + file.getName(), e.getMessage());
+                    continue;
+                }
+                compare(folder + "/" + file.getName(), puzzle, new long[2]);
+            }
+        }
+
+        long[] totals = new long[2];
+        for (int i = 0; i < puzzleCount; i++) {
+            PuzzleGenerator generator = new PuzzleGenerator(1006 + i);
+            generator.setSize(size, size);
+            generator.setDensity(fillPercent / 100.0);
+            Nonogram puzzle = generator.generate();
+            compare("random " + size + "x" + size + " #" + i, puzzle, totals);
+        }
+        System.out.printf("%d random puzzles: guesser %.1f ms, sat %.1f ms%n", puzzleCount, totals[0] / 1e6, totals[1] / 1e6);
+    }
+
+    /**
+     * Solves a puzzle with the Guesser and with the SAT backend, each on its own copy, and prints a line for it.
+     *
+     * @param totals The total time taken by the Guesser and by the SAT backend, which this adds to.
+     */
+    private static void compare(String name, Nonogram puzzle, long[] totals) {
+        Nonogram guessed = puzzle.copy();
+        long start = System.nanoTime();
+        Guesser guesser = new Guesser(guessed);
+        guesser.solve();
+        long guesserTime = System.nanoTime() - start;
+
+        Nonogram encoded = puzzle.copy();
+        start = System.nanoTime();
+        SatBackend sat = new SatBackend(encoded);
+        sat.solve();
+        long satTime = System.nanoTime() - start;
+
+        if (sat.getStatus() == SolveStatus.SOLVED && !encoded.isSolved()) {
+            throw new IllegalStateException("SAT backend gave a wrong solution for " + name);
+        }
+        totals[0] += guesserTime;
+        totals[1] += satTime;
+        System.out.printf("%-28s %-18s %10.1f %-18s %10.1f%n", name, guesser.getStatus(), guesserTime / 1e6,
+                sat.getStatus(), satTime / 1e6);
+    }
+}
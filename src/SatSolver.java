@@ -0,0 +1,681 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small conflict driven clause learning (CDCL) SAT solver.
+ * Variables are numbered from 1, and clauses are given as in the DIMACS format:
+ * a positive number is a variable, and a negative number is its negation.
+ * It uses two watched literals for unit propagation, learns a first-UIP clause from each conflict,
+ * picks decisions by VSIDS activity with saved phases, restarts on the Luby sequence,
+ * and regularly drops half of the learnt clauses with the worst literal block distance.
+ */
+public class SatSolver {
+    private static final byte TRUE = 1;
+    private static final byte FALSE = -1;
+    private static final int RESTART_BASE = 100; // Conflicts in the first restart interval
+    private static final int CHECKPOINT_INTERVAL = 256; // Conflicts between checks for cancellation
+
+    // Literals are stored as 2 * variable for the positive literal and 2 * variable + 1 for the negative one
+    private int variables;
+    private byte[] values = new byte[4]; // The value of each literal
+    private int[] levels = new int[2]; // The decision level each variable was assigned at
+    private int[] reasons = new int[2]; // The clause that implied each variable, or -1 for a decision
+    private boolean[] phases = new boolean[2]; // The last value of each variable, reused when deciding it again
+    private double[] activities = new double[2];
+    private boolean[] seen = new boolean[2];
+
+    private List<int[]> clauses = new ArrayList<>(); // Compacted when learnt clauses are deleted, renumbering the rest
+    private int addedClauses; // The clauses in the list which were added rather than learnt
+    private IntList learnts = new IntList(); // The learnt clauses, with their literal block distances below
+    private IntList learntLbds = new IntList();
+    private IntList[] watchers = new IntList[4]; // The clauses watching each literal
+    private boolean unsatisfiable; // Set when the clauses added so far contradict each other
+
+    private int[] trail = new int[2]; // Assigned literals, in the order they were assigned
+    private int trailSize;
+    private int propagated; // Literals of the trail before this have been propagated
+    private IntList levelStarts = new IntList(); // Where each decision level starts on the trail
+
+    private double activityIncrement = 1;
+    private VariableHeap heap = new VariableHeap();
+    private long conflicts;
+    private long decisions;
+    private long propagations;
+    private int maxLearnts;
+    private SolveMonitor monitor; // Checked with the thread's interrupt flag, or null if the solve has no options
+
+    /**
+     * Adds a new variable.
+     *
+     * @return The number of the variable.
+     */
+    public int newVariable() {
+        int variable = ++variables;
+        if (variable + 1 > levels.length) {
+            int size = levels.length * 2;
+            values = Arrays.copyOf(values, size * 2);
+            watchers = Arrays.copyOf(watchers, size * 2);
+            levels = Arrays.copyOf(levels, size);
+            reasons = Arrays.copyOf(reasons, size);
+            phases = Arrays.copyOf(phases, size);
+            activities = Arrays.copyOf(activities, size);
+            seen = Arrays.copyOf(seen, size);
+            trail = Arrays.copyOf(trail, size);
+        }
+        watchers[2 * variable] = new IntList();
+        watchers[2 * variable + 1] = new IntList();
+        reasons[variable] = -1;
+        heap.insert(variable);
+        return variable;
+    }
+
+    /**
+     * @return the number of variables added
+     */
+    public int getVariableCount() {
+        return variables;
+    }
+
+    /**
+     * @return the number of clauses added, not counting learnt clauses or ones satisfied as they were added
+     */
+    public int getClauseCount() {
+        return addedClauses;
+    }
+
+    /**
+     * @return the number of learnt clauses kept, not counting those deleted to make room for more
+     */
+    public int getLearntCount() {
+        return learnts.size();
+    }
+
+    /**
+     * @return the number of conflicts found while solving
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return the number of decisions made while solving
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * @return the number of literals assigned by unit propagation while solving
+     */
+    public long getPropagations() {
+        return propagations;
+    }
+
+    /**
+     * Adds a clause. Clauses can also be added between calls to solve(), for example to rule out
+     * a model that has been found, and the clauses learnt so far are kept.
+     *
+     * @param literals The literals of the clause, which is satisfied if any of them is true.
+     */
+    public void addClause(int... literals) {
+        if (unsatisfiable) {
+            return;
+        }
+        backtrack(0); // Drop the last model, so only facts that always hold are assigned
+        int[] clause = new int[literals.length];
+        int size = 0;
+        for (int literal : literals) {
+            int variable = Math.abs(literal);
+            if (variable == 0 || variable > variables) {
+                throw new IllegalArgumentException("Unknown variable " + literal);
+            }
+            int lit = literal > 0 ? 2 * variable : 2 * variable + 1;
+            if (values[lit] == TRUE || contains(clause, size, lit ^ 1)) {
+                return; // Always satisfied
+            }
+            if (values[lit] == 0 && !contains(clause, size, lit)) {
+                clause[size++] = lit;
+            }
+        }
+
+        if (size == 0) {
+            unsatisfiable = true;
+        } else if (size == 1) {
+            assign(clause[0], -1);
+            unsatisfiable = propagate() != -1;
+        } else {
+            attach(Arrays.copyOf(clause, size));
+            addedClauses++;
+        }
+    }
+
+    private static boolean contains(int[] clause, int size, int lit) {
+        for (int i = 0; i < size; i++) {
+            if (clause[i] == lit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the value of a variable in the model found by solve().
+     *
+     * @param variable The number of the variable.
+     * @return true if the variable is true in the model.
+     */
+    public boolean value(int variable) {
+        return values[2 * variable] == TRUE;
+    }
+
+    /**
+     * Sets the monitor checked every few hundred conflicts, which stops the search early
+     * if the solve it belongs to is cancelled or out of time.
+     *
+     * @param monitor The monitor of the solve, or null for none (the default).
+     */
+    void setMonitor(SolveMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Searches for an assignment that satisfies every clause.
+     * Stops early if the thread is interrupted, checking every few hundred conflicts.
+     *
+     * @return SOLVED if the clauses are satisfiable, with the model available from value(),
+     *         CONTRADICTION if they are not, CANCELLED if the thread was interrupted or the solve cancelled,
+     *         or TIMED_OUT if the solve ran out of time.
+     */
+    public SolveStatus solve() {
+        if (unsatisfiable) {
+            return SolveStatus.CONTRADICTION;
+        }
+        maxLearnts = Math.max(getClauseCount() / 3, 2000);
+        int restart = 0;
+        long restartLimit = RESTART_BASE * luby(restart);
+        long conflictsAtRestart = 0;
+
+        while (true) {
+            int conflict = propagate();
+            if (conflict != -1) {
+                conflicts++;
+                if (levelStarts.size() == 0) {
+                    unsatisfiable = true;
+                    return SolveStatus.CONTRADICTION;
+                }
+                learn(conflict);
+                activityIncrement /= 0.95;
+
+                if (conflicts % CHECKPOINT_INTERVAL == 0) {
+                    SolveStatus stop = VirtualThreads.checkpoint() ? SolveStatus.CANCELLED
+                            : monitor == null ? null : monitor.check();
+                    if (stop != null) {
+                        backtrack(0);
+                        return stop;
+                    }
+                }
+                if (conflicts - conflictsAtRestart >= restartLimit) {
+                    backtrack(0);
+                    conflictsAtRestart = conflicts;
+                    restartLimit = RESTART_BASE * luby(++restart);
+                }
+                if (learnts.size() >= maxLearnts) {
+                    reduceLearnts();
+                }
+            } else {
+                int variable = nextDecision();
+                if (variable == 0) {
+                    return SolveStatus.SOLVED; // Every variable is assigned without conflict
+                }
+                decisions++;
+                levelStarts.add(trailSize);
+                assign(phases[variable] ? 2 * variable : 2 * variable + 1, -1);
+            }
+        }
+    }
+
+    /**
+     * Gets the i-th value of the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ... (starting from i = 0).
+     */
+    static long luby(int i) {
+        int size = 1;
+        int power = 0;
+        while (size < i + 1) {
+            size = 2 * size + 1;
+            power++;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            power--;
+            i = i % size;
+        }
+        return 1L << power;
+    }
+
+    /**
+     * Adds a clause of at least two literals and watches its first two.
+     *
+     * @return The index of the clause.
+     */
+    private int attach(int[] clause) {
+        int index = clauses.size();
+        clauses.add(clause);
+        watchers[clause[0]].add(index);
+        watchers[clause[1]].add(index);
+        return index;
+    }
+
+    /**
+     * Makes a literal true, recording the clause that implied it (or -1 for a decision).
+     */
+    private void assign(int lit, int reason) {
+        int variable = lit >> 1;
+        values[lit] = TRUE;
+        values[lit ^ 1] = FALSE;
+        levels[variable] = levelStarts.size();
+        reasons[variable] = reason;
+        trail[trailSize++] = lit;
+    }
+
+    /**
+     * Propagates every assigned literal which has not been propagated yet.
+     * For each literal made false, the clauses watching it look for another literal to watch;
+     * a clause which cannot find one is either unit, so its other watched literal is assigned, or in conflict.
+     *
+     * @return The index of a clause in conflict, or -1 if there is none.
+     */
+    private int propagate() {
+        while (propagated < trailSize) {
+            int falseLit = trail[propagated++] ^ 1;
+            IntList watching = watchers[falseLit];
+            int[] list = watching.items;
+            int size = watching.size;
+            int kept = 0;
+            int i = 0;
+            while (i < size) {
+                int index = list[i++];
+                int[] clause = clauses.get(index);
+                if (clause[0] == falseLit) {
+                    clause[0] = clause[1];
+                    clause[1] = falseLit;
+                }
+                if (values[clause[0]] == TRUE) {
+                    list[kept++] = index;
+                    continue;
+                }
+
+                boolean moved = false;
+                for (int k = 2; k < clause.length; k++) {
+                    if (values[clause[k]] != FALSE) {
+                        clause[1] = clause[k];
+                        clause[k] = falseLit;
+                        watchers[clause[1]].add(index);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) {
+                    continue;
+                }
+
+                list[kept++] = index;
+                if (values[clause[0]] == FALSE) {
+                    while (i < size) {
+                        list[kept++] = list[i++];
+                    }
+                    watching.size = kept;
+                    propagated = trailSize;
+                    return index;
+                }
+                propagations++;
+                assign(clause[0], index);
+            }
+            watching.size = kept;
+        }
+        return -1;
+    }
+
+    /**
+     * Learns a clause from a conflict by resolving back to the first unique implication point,
+     * then jumps back to the level where the learnt clause becomes unit and assigns it.
+     */
+    private void learn(int conflict) {
+        IntList learnt = new IntList();
+        learnt.add(0); // Replaced by the asserting literal
+        int level = levelStarts.size();
+        int pending = 0;
+        int lit = -1;
+        int next = trailSize - 1;
+        int[] clause = clauses.get(conflict);
+
+        while (true) {
+            for (int k = lit == -1 ? 0 : 1; k < clause.length; k++) {
+                int variable = clause[k] >> 1;
+                if (!seen[variable] && levels[variable] > 0) {
+                    seen[variable] = true;
+                    bumpVariable(variable);
+                    if (levels[variable] >= level) {
+                        pending++;
+                    } else {
+                        learnt.add(clause[k]);
+                    }
+                }
+            }
+            while (!seen[trail[next] >> 1]) {
+                next--;
+            }
+            lit = trail[next--];
+            seen[lit >> 1] = false;
+            if (--pending == 0) {
+                break;
+            }
+            conflict = reasons[lit >> 1];
+            clause = clauses.get(conflict);
+        }
+        learnt.items[0] = lit ^ 1;
+
+        // Drop literals implied by other literals of the clause
+        int[] marked = Arrays.copyOf(learnt.items, learnt.size);
+        int kept = 1;
+        for (int k = 1; k < learnt.size; k++) {
+            if (!redundant(learnt.items[k])) {
+                learnt.items[kept++] = learnt.items[k];
+            }
+        }
+        for (int k = 1; k < marked.length; k++) {
+            seen[marked[k] >> 1] = false;
+        }
+        learnt.size = kept;
+
+        // Watch the literal from the highest remaining level second, as it is the first to become unassigned
+        int backjumpLevel = 0;
+        for (int k = 1; k < learnt.size; k++) {
+            int literalLevel = levels[learnt.items[k] >> 1];
+            if (literalLevel > backjumpLevel) {
+                backjumpLevel = literalLevel;
+                int swap = learnt.items[1];
+                learnt.items[1] = learnt.items[k];
+                learnt.items[k] = swap;
+            }
+        }
+
+        backtrack(backjumpLevel);
+        if (learnt.size == 1) {
+            assign(learnt.items[0], -1);
+        } else {
+            int[] learntClause = Arrays.copyOf(learnt.items, learnt.size);
+            int index = attach(learntClause);
+            learnts.add(index);
+            learntLbds.add(blockDistance(learntClause));
+            assign(learntClause[0], index);
+        }
+    }
+
+    /**
+     * Checks whether a literal of a learnt clause is implied by the others, because every other literal
+     * of the clause that implied it is already in the learnt clause or assigned at level 0.
+     */
+    private boolean redundant(int lit) {
+        int reason = reasons[lit >> 1];
+        if (reason == -1) {
+            return false;
+        }
+        int[] clause = clauses.get(reason);
+        for (int k = 1; k < clause.length; k++) {
+            int variable = clause[k] >> 1;
+            if (!seen[variable] && levels[variable] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the different decision levels in a clause, its literal block distance (LBD).
+     * Learnt clauses with a low LBD tend to be the useful ones.
+     */
+    private int blockDistance(int[] clause) {
+        IntList distinct = new IntList();
+        for (int lit : clause) {
+            int level = levels[lit >> 1];
+            boolean found = false;
+            for (int k = 0; k < distinct.size && !found; k++) {
+                found = distinct.items[k] == level;
+            }
+            if (!found) {
+                distinct.add(level);
+            }
+        }
+        return distinct.size;
+    }
+
+    /**
+     * Increases the activity of a variable, rescaling every activity if they grow too large.
+     */
+    private void bumpVariable(int variable) {
+        activities[variable] += activityIncrement;
+        if (activities[variable] > 1e100) {
+            for (int v = 1; v <= variables; v++) {
+                activities[v] *= 1e-100;
+            }
+            activityIncrement *= 1e-100;
+        }
+        heap.increased(variable);
+    }
+
+    /**
+     * Unassigns every literal above a decision level, saving their values to reuse as phases.
+     */
+    private void backtrack(int level) {
+        if (levelStarts.size() <= level) {
+            return;
+        }
+        int start = levelStarts.items[level];
+        for (int k = trailSize - 1; k >= start; k--) {
+            int lit = trail[k];
+            int variable = lit >> 1;
+            values[lit] = 0;
+            values[lit ^ 1] = 0;
+            reasons[variable] = -1;
+            phases[variable] = (lit & 1) == 0;
+            heap.insert(variable);
+        }
+        trailSize = start;
+        propagated = start;
+        levelStarts.size = level;
+    }
+
+    /**
+     * Picks the unassigned variable with the highest activity.
+     *
+     * @return The variable, or 0 if every variable is assigned.
+     */
+    private int nextDecision() {
+        while (!heap.isEmpty()) {
+            int variable = heap.removeMax();
+            if (values[2 * variable] == 0) {
+                return variable;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Deletes half of the learnt clauses, keeping those with an LBD of 2 or less
+     * and those which are the reason for a current assignment, then compacts the clause list.
+     */
+    private void reduceLearnts() {
+        Integer[] order = new Integer[learnts.size()];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(learntLbds.items[b], learntLbds.items[a]));
+
+        boolean[] delete = new boolean[order.length];
+        for (int k = 0; k < order.length / 2; k++) {
+            int index = learnts.items[order[k]];
+            int[] clause = clauses.get(index);
+            boolean locked = values[clause[0]] == TRUE && reasons[clause[0] >> 1] == index;
+            delete[order[k]] = !locked && learntLbds.items[order[k]] > 2;
+        }
+
+        int kept = 0;
+        for (int k = 0; k < learnts.size(); k++) {
+            if (delete[k]) {
+                clauses.set(learnts.items[k], null);
+            } else {
+                learnts.items[kept] = learnts.items[k];
+                learntLbds.items[kept++] = learntLbds.items[k];
+            }
+        }
+        learnts.size = kept;
+        learntLbds.size = kept;
+        compactClauses();
+        maxLearnts += maxLearnts / 10;
+    }
+
+    /**
+     * Drops the deleted clauses from the clause list and renumbers the rest, so the list only holds the clauses kept
+     * rather than every clause ever learnt. The watch lists, the reasons of the assigned variables and the list
+     * of learnt clauses are moved to the new numbers, and stop watching the deleted clauses.
+     */
+    private void compactClauses() {
+        int[] renumbered = new int[clauses.size()]; // The new number of each clause, or -1 if it was deleted
+        int kept = 0;
+        for (int index = 0; index < clauses.size(); index++) {
+            int[] clause = clauses.get(index);
+            if (clause == null) {
+                renumbered[index] = -1;
+            } else {
+                renumbered[index] = kept;
+                clauses.set(kept++, clause);
+            }
+        }
+        clauses.subList(kept, clauses.size()).clear();
+
+        for (int lit = 2; lit <= 2 * variables + 1; lit++) {
+            IntList watching = watchers[lit];
+            int watchKept = 0;
+            for (int k = 0; k < watching.size; k++) {
+                int index = renumbered[watching.items[k]];
+                if (index >= 0) {
+                    watching.items[watchKept++] = index;
+                }
+            }
+            watching.size = watchKept;
+        }
+        // Only assigned variables have a reason, and the clauses which are reasons are never deleted
+        for (int k = 0; k < trailSize; k++) {
+            int variable = trail[k] >> 1;
+            if (reasons[variable] >= 0) {
+                reasons[variable] = renumbered[reasons[variable]];
+            }
+        }
+        for (int k = 0; k < learnts.size; k++) {
+            learnts.items[k] = renumbered[learnts.items[k]];
+        }
+    }
+
+    /**
+     * A growable list of ints, used for watch lists and the trail levels without boxing.
+     */
+    private static class IntList {
+        int[] items = new int[4];
+        int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A binary max-heap of variables ordered by activity.
+     */
+    private class VariableHeap {
+        private int[] heap = new int[4];
+        private int size;
+        private int[] positions = new int[0]; // Where each variable is in the heap, or -1 if it is not
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void insert(int variable) {
+            if (variable >= positions.length) {
+                int old = positions.length;
+                positions = Arrays.copyOf(positions, Math.max(variable + 1, old * 2));
+                Arrays.fill(positions, old, positions.length, -1);
+            }
+            if (positions[variable] >= 0) {
+                return;
+            }
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = variable;
+            positions[variable] = size;
+            up(size++);
+        }
+
+        void increased(int variable) {
+            if (variable < positions.length && positions[variable] >= 0) {
+                up(positions[variable]);
+            }
+        }
+
+        int removeMax() {
+            int max = heap[0];
+            positions[max] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                down(0);
+            }
+            return max;
+        }
+
+        private void up(int at) {
+            int variable = heap[at];
+            while (at > 0) {
+                int parent = (at - 1) / 2;
+                if (activities[heap[parent]] >= activities[variable]) {
+                    break;
+                }
+                heap[at] = heap[parent];
+                positions[heap[at]] = at;
+                at = parent;
+            }
+            heap[at] = variable;
+            positions[variable] = at;
+        }
+
+        private void down(int at) {
+            int variable = heap[at];
+            while (2 * at + 1 < size) {
+                int child = 2 * at + 1;
+                if (child + 1 < size && activities[heap[child + 1]] > activities[heap[child]]) {
+                    child++;
+                }
+                if (activities[heap[child]] <= activities[variable]) {
+                    break;
+                }
+                heap[at] = heap[child];
+                positions[heap[at]] = at;
+                at = child;
+            }
+            heap[at] = variable;
+            positions[variable] = at;
+        }
+    }
+}
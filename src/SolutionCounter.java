@@ -0,0 +1,171 @@
+package src;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONException;
+
+/**
+ * Counts the solutions of a puzzle up to a limit, to check that a puzzle has exactly one before it is published.
+ * Line solving fixes the cells that are the same in every solution, then the SAT backend finds the solutions
+ * for the rest one at a time, ruling out each one it finds, so it never enumerates grids that break a clue.
+ *
+ * Usage: java -cp "lib/*":out src.SolutionCounter [--limit N] puzzle.json...
+ * Prints whether each puzzle is unique, and exits with 1 if any of them is not.
+ */
+public class SolutionCounter {
+    private final int limit;
+
+    /**
+     * Creates a counter which stops after finding two solutions, enough to tell whether a puzzle is unique.
+     */
+    public SolutionCounter() {
+        this(2);
+    }
+
+    /**
+     * Creates a counter which stops after finding the given number of solutions.
+     *
+     * @param limit The most solutions to find, at least 1.
+     */
+    public SolutionCounter(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit must be at least 1, not " + limit);
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Counts the solutions of a puzzle, up to the limit. The puzzle's grid is not changed,
+     * and any cells already filled in are treated as part of the puzzle.
+     *
+     * @param puzzle The puzzle to check.
+     * @return The number of solutions found and the first two of them.
+     */
+    public Result count(Nonogram puzzle) {
+        long start = System.nanoTime();
+        SatBackend backend = new SatBackend(puzzle);
+        List<CellState[][]> solutions = backend.findSolutions(limit);
+        return new Result(solutions.size(), backend.getStatus(), solutions.subList(0, Math.min(2, solutions.size())),
+                System.nanoTime() - start);
+    }
+
+    public static void main(String[] args) {
+        int limit = 2;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--limit") && i + 1 < args.length) {
+                limit = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: java -cp \"lib/*\":out src.SolutionCounter [--limit N] puzzle.json...");
+            System.exit(2);
+        }
+
+        SolutionCounter counter = new SolutionCounter(limit);
+        boolean allUnique = true;
+        for (String path : paths) {
+            Result result;
+            try {
+                result = counter.count(new PuzzleLoader().loadPuzzle(path));
+            } catch (IOException | JSONException | IllegalArgumentException e) {
+                // A bad file is reported and skipped, so the rest of the files are still checked
+                System.out.printf("%s: could not be loaded: %s%n", path, e.getMessage());
+                allUnique = false;
+                continue;
+            }
+            System.out.printf("%s: %s (%d ms)%n", path, result, result.getElapsedMillis());
+            if (result.getCount() >= 2) {
+                CellState[][] first = result.getWitnesses().get(0);
+                CellState[][] second = result.getWitnesses().get(1);
+                for (int i = 0; i < first.length; i++) {
+                    for (int j = 0; j < first[i].length; j++) {
+                        if (first[i][j] != second[i][j]) {
+                            System.out.printf("  cell (%d, %d) can be %s or %s%n", i, j, first[i][j], second[i][j]);
+                        }
+                    }
+                }
+            }
+            allUnique &= result.isUnique();
+        }
+        System.exit(allUnique ? 0 : 1);
+    }
+
+    /**
+     * The outcome of counting a puzzle's solutions.
+     */
+    public static class Result {
+        private final int count;
+        private final SolveStatus status;
+        private final List<CellState[][]> witnesses;
+        private final long elapsedNanos;
+
+        Result(int count, SolveStatus status, List<CellState[][]> witnesses, long elapsedNanos) {
+            this.count = count;
+            this.status = status;
+            this.witnesses = Collections.unmodifiableList(new ArrayList<>(witnesses));
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of solutions found, which is the limit if there are at least that many
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return true if the search stopped at the limit, so the puzzle may have more solutions than the count
+         */
+        public boolean isAtLeast() {
+            return status == SolveStatus.UNSOLVED;
+        }
+
+        /**
+         * @return true if the search was interrupted, in which case the count is only a lower bound
+         */
+        public boolean isCancelled() {
+            return status == SolveStatus.CANCELLED;
+        }
+
+        /**
+         * @return true if the puzzle has exactly one solution
+         */
+        public boolean isUnique() {
+            return count == 1 && status == SolveStatus.SOLVED;
+        }
+
+        /**
+         * @return the first two solutions found (fewer if there are fewer), which differ in at least one cell
+         */
+        public List<CellState[][]> getWitnesses() {
+            return witnesses;
+        }
+
+        /**
+         * @return the time the count took in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            if (isCancelled()) {
+                return "cancelled after " + count + " solutions";
+            } else if (count == 0) {
+                return "no solution";
+            } else if (isUnique()) {
+                return "unique";
+            } else if (isAtLeast()) {
+                return "at least " + count + " solutions";
+            }
+            return count + " solutions";
+        }
+    }
+}
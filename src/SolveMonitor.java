@@ -0,0 +1,133 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Applies the options of one solve while it runs. The solvers call check() on their hot paths,
+ * from any of the threads of the solve, and stop with the status it returns.
+ * It also calls the progress listener, no more often than the options allow,
+ * and holds the stats the solvers record for the solve, along with how many copies of the grid they hold.
+ */
+class SolveMonitor {
+    private final SolveOptions options;
+    private final Nonogram puzzle; // The grid reported in progress and in the result
+    private final IntSupplier guesses;
+    private final long start;
+    private final long timeLimitNanos; // 0 for no limit
+    private final long intervalNanos;
+    private final AtomicLong nextProgress; // When the progress listener is next due, from System.nanoTime()
+    private final SolverStats stats = new SolverStats();
+    private final SolverEvents.SolveEvent event = new SolverEvents.SolveEvent();
+    private final String solver;
+    private final AtomicInteger gridCopies = new AtomicInteger(); // Copies of the grid the solvers hold right now
+    private final AtomicInteger peakGridCopies = new AtomicInteger();
+
+    /**
+     * @param options The options of the solve.
+     * @param puzzle  The puzzle being solved.
+     * @param solver  The name of the solver, for the flight recorder.
+     * @param guesses Gives the number of guesses made so far.
+     */
+    SolveMonitor(SolveOptions options, Nonogram puzzle, String solver, IntSupplier guesses) {
+        event.begin();
+        this.options = options;
+        this.solver = solver;
+        this.puzzle = puzzle;
+        this.guesses = guesses;
+        this.start = System.nanoTime();
+        this.timeLimitNanos = options.getTimeLimitMillis() * 1_000_000;
+        this.intervalNanos = options.getProgressIntervalMillis() * 1_000_000;
+        this.nextProgress = new AtomicLong(start + intervalNanos);
+    }
+
+    /**
+     * Checks whether the solve should stop, and calls the progress listener if it is due.
+     *
+     * @return CANCELLED if the token has been cancelled, TIMED_OUT if the time limit has passed,
+     *         or null if the solve should carry on
+     */
+    SolveStatus check() {
+        CancellationToken token = options.getCancellationToken();
+        if (token != null && token.isCancelled()) {
+            return SolveStatus.CANCELLED;
+        }
+        long now = System.nanoTime();
+        if (timeLimitNanos > 0 && now - start >= timeLimitNanos) {
+            return SolveStatus.TIMED_OUT;
+        }
+        SolveOptions.ProgressListener listener = options.getProgressListener();
+        if (listener != null) {
+            long due = nextProgress.get();
+            // Only one thread reports each time the listener is due
+            if (now - due >= 0 && nextProgress.compareAndSet(due, now + intervalNanos)) {
+                listener.onProgress(result(SolveStatus.UNSOLVED));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the stats of this solve, which the solvers add to as they go
+     */
+    SolverStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Records that a solver has made a copy of the grid, which it must release when it is done with it.
+     */
+    void gridCopyTaken() {
+        peakGridCopies.accumulateAndGet(gridCopies.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * Records that a solver has finished with a copy of the grid.
+     */
+    void gridCopyReleased() {
+        gridCopies.decrementAndGet();
+    }
+
+    /**
+     * Ends the solve, adding its stats to those of the whole JVM.
+     *
+     * @param status How the solve ended.
+     * @return the result of the solve
+     */
+    SolveResult finish(SolveStatus status) {
+        stats.increment(SolverStats.Counter.SOLVES);
+        SolverStats.global().addAll(stats);
+        SolveResult result = result(status);
+        if (event.shouldCommit()) {
+            event.puzzleName = puzzle.getName();
+            event.rows = puzzle.getRowConstraints().length;
+            event.columns = puzzle.getColumnConstraints().length;
+            event.solver = solver;
+            event.status = status.name();
+            event.cellsDetermined = result.getCellsDetermined();
+            event.guesses = result.getGuesses();
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * @param status How the solve ended, or UNSOLVED for a progress report.
+     * @return the result of the solve so far
+     */
+    SolveResult result(SolveStatus status) {
+        int known = 0;
+        int total = 0;
+        for (CellState[] row : puzzle.getGrid()) {
+            for (CellState cell : row) {
+                total++;
+                if (cell != CellState.UNKNOWN) {
+                    known++;
+                }
+            }
+        }
+        return new SolveResult(status, known, total, guesses.getAsInt(), peakGridCopies.get(),
+                System.nanoTime() - start, stats);
+    }
+}
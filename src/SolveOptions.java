@@ -0,0 +1,106 @@
+package src;
+
+/**
+ * Limits and callbacks for a solve: how many guesses it may make, how long it may take,
+ * a token to cancel it with, and a listener told how it is getting on.
+ * A solve that runs out of time ends with TIMED_OUT, and one that is cancelled ends with CANCELLED,
+ * leaving whatever it had found on the grid. The same options can be used for several solves.
+ */
+public class SolveOptions {
+    private int maxGuesses = 1000;
+    private long timeLimitMillis; // 0 for no limit
+    private CancellationToken cancellationToken;
+    private ProgressListener progressListener;
+    private long progressIntervalMillis = 100;
+
+    /**
+     * Told how a solve is getting on, from whichever thread is solving.
+     */
+    public interface ProgressListener {
+        /**
+         * @param progress what the solve has found so far, with the status UNSOLVED
+         */
+        void onProgress(SolveResult progress);
+    }
+
+    /**
+     * @return the most guesses a solve may make before giving up with BUDGET_EXHAUSTED
+     */
+    public int getMaxGuesses() {
+        return maxGuesses;
+    }
+
+    /**
+     * @param maxGuesses the most guesses a solve may make before giving up with BUDGET_EXHAUSTED (1000 by default)
+     */
+    public void setMaxGuesses(int maxGuesses) {
+        if (maxGuesses < 0) {
+            throw new IllegalArgumentException("The guess limit can't be negative: " + maxGuesses);
+        }
+        this.maxGuesses = maxGuesses;
+    }
+
+    /**
+     * @return how long a solve may run in milliseconds, or 0 if there is no limit
+     */
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    /**
+     * @param timeLimitMillis how long a solve may run in milliseconds before it stops with TIMED_OUT,
+     *                        counted from when it starts, or 0 for no limit (the default)
+     */
+    public void setTimeLimitMillis(long timeLimitMillis) {
+        if (timeLimitMillis < 0) {
+            throw new IllegalArgumentException("The time limit can't be negative: " + timeLimitMillis);
+        }
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    /**
+     * @return the token that cancels a solve, or null if there is none
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * @param cancellationToken the token that cancels a solve, or null for none (the default)
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * @return the listener told how a solve is getting on, or null if there is none
+     */
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * @param progressListener the listener told how a solve is getting on, or null for none (the default)
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @return the least time between two calls to the progress listener in milliseconds
+     */
+    public long getProgressIntervalMillis() {
+        return progressIntervalMillis;
+    }
+
+    /**
+     * @param progressIntervalMillis the least time between two calls to the progress listener
+     *                               in milliseconds (100 by default)
+     */
+    public void setProgressIntervalMillis(long progressIntervalMillis) {
+        if (progressIntervalMillis < 0) {
+            throw new IllegalArgumentException("The progress interval can't be negative: " + progressIntervalMillis);
+        }
+        this.progressIntervalMillis = progressIntervalMillis;
+    }
+}
@@ -0,0 +1,90 @@
+package src;
+
+/**
+ * What a solve did: how it ended, how much of the grid it found, how many guesses it made,
+ * how many copies of the grid it held at once and how long it took.
+ */
+public class SolveResult {
+    private final SolveStatus status;
+    private final int cellsDetermined;
+    private final int totalCells;
+    private final int guesses;
+    private final int peakGridCopies;
+    private final long elapsedNanos;
+    private final SolverStats stats;
+
+    SolveResult(SolveStatus status, int cellsDetermined, int totalCells, int guesses, int peakGridCopies,
+            long elapsedNanos, SolverStats stats) {
+        this.status = status;
+        this.cellsDetermined = cellsDetermined;
+        this.totalCells = totalCells;
+        this.guesses = guesses;
+        this.peakGridCopies = peakGridCopies;
+        this.elapsedNanos = elapsedNanos;
+        this.stats = stats;
+    }
+
+    /**
+     * @return how the solve ended
+     */
+    public SolveStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the puzzle was solved
+     */
+    public boolean isSolved() {
+        return status == SolveStatus.SOLVED;
+    }
+
+    /**
+     * @return the number of cells on the grid which are not unknown
+     */
+    public int getCellsDetermined() {
+        return cellsDetermined;
+    }
+
+    /**
+     * @return the number of cells on the grid
+     */
+    public int getTotalCells() {
+        return totalCells;
+    }
+
+    /**
+     * @return the number of guesses made
+     */
+    public int getGuesses() {
+        return guesses;
+    }
+
+    /**
+     * @return the most copies of the grid the solvers held at once. Guessing one branch at a time undoes
+     *         its guesses from the grid's change log instead of copying it, so this counts the copies
+     *         made by probing and by parallel search.
+     */
+    public int getPeakGridCopies() {
+        return peakGridCopies;
+    }
+
+    /**
+     * @return the time the solve took in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    /**
+     * @return what the solvers did during the solve, which is still being counted if this is a progress report
+     */
+    public SolverStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d cells, %d guesses, %d ms", status, cellsDetermined, totalCells, guesses,
+                getElapsedMillis());
+    }
+}
@@ -0,0 +1,13 @@
+package src;
+
+/**
+ * The possible outcomes of trying to solve a nonogram.
+ */
+public enum SolveStatus {
+    SOLVED, // every line matches its constraints
+    UNSOLVED, // deduction ran out of things to find, but nothing is wrong yet
+    CONTRADICTION, // some line has no valid fill, so there is no solution from this state
+    BUDGET_EXHAUSTED, // the guesser used up its guesses before finding a solution
+    CANCELLED, // the solve was stopped before it finished, for example because another strategy won
+    TIMED_OUT; // the solve ran past its time limit
+}
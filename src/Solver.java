@@ -1,6 +1,9 @@
 package src;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The Solver class is responsible for solving the nonogram puzzle.
@@ -10,6 +13,20 @@ import java.util.*;
  */
 public class Solver {
     private Nonogram puzzle;
+    private LineSolver lineSolver;
+    private LineCache lineCache;
+    private ForkJoinPool pool; // Used to process lines in parallel, or null to process them one at a time
+    private volatile boolean contradiction; // Set as soon as any line has no valid fill
+    private Deque<Integer> dirtyLines; // Lines with cells changed since they were last processed
+    private boolean[] queued; // Whether each line is already in dirtyLines
+    private SolveMonitor monitor; // Checked before each line, or null if the solve has no options
+    private SolverStats stats; // The stats of the monitor's solve, or null if there is no monitor
+
+    // Counted during each pass of deduction
+    private int linesProcessed;
+    private int cellsFixed;
+    private LongAdder cacheLookups; // Lines can be looked up from several threads when solving in parallel
+    private long lineSolvesRecorded;
 
     /**
      * Constructor for the Solver class, which initializes the puzzle instance.
@@ -17,7 +34,60 @@ public class Solver {
      * @param puzzle The nonogram puzzle to solve.
      */
     public Solver(Nonogram puzzle) {
+        this(puzzle, new LineCache());
+    }
+
+    /**
+     * Constructor for a solver which shares a cache of line solutions, for example with a Guesser.
+     * 
+     * @param puzzle    The nonogram puzzle to solve.
+     * @param lineCache The cache of line solutions to use.
+     */
+    public Solver(Nonogram puzzle, LineCache lineCache) {
         this.puzzle = puzzle;
+        this.lineSolver = new LineSolver();
+        this.lineCache = lineCache;
+    }
+
+    /**
+     * Sets the pool used to solve the lines in parallel. All the queued rows are solved at once,
+     * then all the queued columns, and so on. This gives the same result as solving one line at a time.
+     * 
+     * @param pool The pool to use, or null to solve one line at a time (the default).
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the monitor checked before each line is processed, which stops the solver early
+     * if the solve it belongs to is cancelled or out of time.
+     * 
+     * @param monitor The monitor of the solve, or null for none (the default).
+     */
+    void setMonitor(SolveMonitor monitor) {
+        this.monitor = monitor;
+        this.stats = monitor == null ? null : monitor.getStats();
+        this.cacheLookups = monitor == null ? null : new LongAdder();
+    }
+
+    /**
+     * Gets the cache of line solutions used by this solver.
+     * 
+     * @return The line cache for this solver.
+     */
+    public LineCache getLineCache() {
+        return lineCache;
+    }
+
+    /**
+     * Gets the line solver used for each row and column, which counts how many lines
+     * were settled by the overlap stage and how many needed the full line solver.
+     * 
+     * @return The line solver for this puzzle.
+     */
+    public LineSolver getLineSolver() {
+        return lineSolver;
     }
 
     /**
@@ -31,115 +101,351 @@ public class Solver {
         return solve(false); // Default to not using guesser
     }
 
+    /**
+     * Solves the puzzle as far as possible by deduction.
+     * 
+     * @param allowGuessing Whether the Guesser will take over if deduction is not enough.
+     * @return true if the puzzle is solved, false otherwise.
+     */
     public boolean solve(boolean allowGuessing) {
-        boolean changed;
-        int iterations = 0;
-        final int MAX_ITERATIONS = 100;
-
-        do {
-            changed = false;
-            iterations++;
-
-            // Process rows
-            for (int i = 0; i < puzzle.getRowConstraints().length; i++) {
-                if (processRows(i)) {
-                    changed = true;
-                }
-            }
+        // If deductive solving fails, return false so the Guesser (if allowed) can take over
+        return propagate() == SolveStatus.SOLVED;
+    }
 
-            // Process columns
-            for (int j = 0; j < puzzle.getColumnConstraints().length; j++) {
-                if (processColumns(j)) {
-                    changed = true;
-                }
+    /**
+     * Solves the puzzle as far as possible by deduction, using a queue of lines to process.
+     * Every line is processed once, and after that a line is only processed again when one
+     * of its cells has been changed by a crossing line, so the work done is proportional
+     * to the number of cells found rather than to the size of the grid.
+     * Stops as soon as a line is found to have no valid fill.
+     * 
+     * @return SOLVED if the puzzle is solved, CONTRADICTION if some line has no valid fill,
+     *         UNSOLVED if deduction could not finish the puzzle, CANCELLED if the thread was interrupted
+     *         or the solve cancelled, or TIMED_OUT if the solve ran out of time.
+     */
+    public SolveStatus propagate() {
+        int rows = puzzle.getRowConstraints().length;
+        int columns = puzzle.getColumnConstraints().length;
+        startQueue();
+
+        // Every line has to be processed at least once
+        for (int line = 0; line < rows + columns; line++) {
+            markDirty(line);
+        }
+        return runQueue();
+    }
+
+    /**
+     * Solves the puzzle as far as possible by deduction after a single cell has been changed,
+     * starting with only that cell's row and column in the queue.
+     * The rest of the grid must already be as far as deduction can take it, for example after propagate().
+     * 
+     * @param row    The row of the changed cell.
+     * @param column The column of the changed cell.
+     * @return the result of deduction, as for propagate().
+     */
+    public SolveStatus propagate(int row, int column) {
+        startQueue();
+        markDirty(row);
+        markDirty(puzzle.getRowConstraints().length + column);
+        return runQueue();
+    }
+
+    /**
+     * Solves the puzzle as far as possible by deduction after some cells have been changed,
+     * starting with only their rows and columns in the queue.
+     * The rest of the grid must already be as far as deduction can take it, as for propagate(row, column).
+     * 
+     * @param rows    The rows of the changed cells.
+     * @param columns The columns of the changed cells, in the same order.
+     * @return the result of deduction, as for propagate().
+     */
+    public SolveStatus propagate(int[] rows, int[] columns) {
+        startQueue();
+        for (int k = 0; k < rows.length; k++) {
+            markDirty(rows[k]);
+            markDirty(puzzle.getRowConstraints().length + columns[k]);
+        }
+        return runQueue();
+    }
+
+    /**
+     * Clears the queue of lines to process.
+     */
+    private void startQueue() {
+        int lines = puzzle.getRowConstraints().length + puzzle.getColumnConstraints().length;
+        dirtyLines = new ArrayDeque<>();
+        queued = new boolean[lines];
+        contradiction = false;
+    }
+
+    /**
+     * Processes the queued lines, recording what was done in the stats if there are any.
+     */
+    private SolveStatus runQueue() {
+        SolverEvents.PropagationEvent event = null;
+        if (SolverEvents.PROPAGATION.isEnabled()) {
+            event = new SolverEvents.PropagationEvent();
+            event.begin();
+        }
+        long start = stats == null ? 0 : System.nanoTime();
+        // The writes skip the move history, so they are kept as a move of their own rather than added to the player's last move
+        int mark = puzzle.mark();
+        SolveStatus status = drainQueue();
+        puzzle.keepChanges(mark);
+        if (stats != null) {
+            recordStats(status, System.nanoTime() - start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.puzzleName = puzzle.getName();
+            event.rows = puzzle.getRowConstraints().length;
+            event.columns = puzzle.getColumnConstraints().length;
+            event.linesProcessed = linesProcessed;
+            event.cellsFixed = cellsFixed;
+            event.status = status.name();
+            event.commit();
+        }
+        linesProcessed = 0;
+        cellsFixed = 0;
+        return status;
+    }
+
+    /**
+     * Adds what was done since the stats were last recorded to the stats.
+     * 
+     * @param status  How deduction ended.
+     * @param elapsed How long deduction took in nanoseconds.
+     */
+    private void recordStats(SolveStatus status, long elapsed) {
+        stats.add(SolverStats.Counter.DEDUCTION_NANOS, elapsed);
+
+        long lineSolves = lineSolver.getOverlapSettled() + lineSolver.getFullSolves();
+        stats.add(SolverStats.Counter.LINES_PROCESSED, linesProcessed);
+        stats.add(SolverStats.Counter.LINE_SOLVES, lineSolves - lineSolvesRecorded);
+        stats.add(SolverStats.Counter.LINE_CACHE_HITS, cacheLookups.sumThenReset() - (lineSolves - lineSolvesRecorded));
+        stats.add(SolverStats.Counter.CELLS_FIXED_BY_DEDUCTION, cellsFixed);
+        if (status == SolveStatus.CONTRADICTION) {
+            stats.increment(SolverStats.Counter.CONTRADICTIONS);
+        }
+        lineSolvesRecorded = lineSolves;
+    }
+
+    /**
+     * Processes the queued lines until none are left or a contradiction is found.
+     */
+    private SolveStatus drainQueue() {
+        int rows = puzzle.getRowConstraints().length;
+        if (pool != null) {
+            return solveInParallel();
+        }
+
+        while (!dirtyLines.isEmpty() && !contradiction) {
+            SolveStatus stop = stopStatus();
+            if (stop != null) {
+                return stop;
             }
+            int line = dirtyLines.poll();
+            queued[line] = false;
+            linesProcessed++;
 
-            // Early exit if solved
-            if (puzzle.isSolved()) {
-                return true;
+            if (line < rows) {
+                processRows(line);
+            } else {
+                processColumns(line - rows);
             }
+        }
 
-        } while (changed && iterations < MAX_ITERATIONS);
+        return status();
+    }
 
-        // If deductive solving fails and guessing is allowed, return false
-        // so Guesser can take over
-        return !allowGuessing && puzzle.isSolved();
+    /**
+     * Checks whether to stop before processing more lines.
+     * 
+     * @return CANCELLED or TIMED_OUT if deduction should stop, or null to carry on.
+     */
+    private SolveStatus stopStatus() {
+        if (Thread.currentThread().isInterrupted()) {
+            return SolveStatus.CANCELLED;
+        }
+        return monitor == null ? null : monitor.check();
     }
 
-    private boolean processColumns(int index) {
-        CellState[] line = getColumn(index);
-        BlockConstraint[] constraints = puzzle.getColumnConstraints()[index];
+    /**
+     * Works out the result of deduction once there are no lines left to process.
+     */
+    private SolveStatus status() {
+        if (contradiction) {
+            return SolveStatus.CONTRADICTION;
+        }
+        return puzzle.isSolved() ? SolveStatus.SOLVED : SolveStatus.UNSOLVED;
+    }
 
-        // Skip if already solved
-        if (puzzle.isLineSolved(line, constraints)) {
-            int colCounter = 0;
-            for (CellState item : line) {
-                if (item.equals(CellState.UNKNOWN)) {
-                    puzzle.setCellState(colCounter, index, CellState.EMPTY);
-                }
-                colCounter++;
-            }
-            return false;
+    /**
+     * Adds a line to the queue of lines to process, if it is not already waiting.
+     * 
+     * @param line The index of the line, where rows come first followed by columns.
+     */
+    private void markDirty(int line) {
+        if (!queued[line]) {
+            queued[line] = true;
+            dirtyLines.add(line);
         }
+    }
+
+    /**
+     * Solves the puzzle as far as possible by deduction, processing all the queued rows at once
+     * on the pool, then all the queued columns, and repeating until no lines are queued.
+     * Within each phase the lines only read the grid, and their results are applied afterwards
+     * in line order, so the result is the same as solving one line at a time.
+     * 
+     * @return the result of deduction, as for propagate().
+     */
+    private SolveStatus solveInParallel() {
+        int rows = puzzle.getRowConstraints().length;
+        int columns = puzzle.getColumnConstraints().length;
 
-        // Generate all possible fills for this line
-        List<CellState[]> fills = generateLineFills(constraints, line);
+        boolean anyQueued = true;
+        while (anyQueued && !contradiction) {
+            SolveStatus stop = stopStatus();
+            if (stop != null) {
+                return stop;
+            }
+            runPhase(0, rows);
+            if (contradiction) {
+                break;
+            }
+            runPhase(rows, rows + columns);
 
-        // If no valid fills, puzzle is unsolvable
-        if (fills.isEmpty()) {
-            return false;
+            anyQueued = false;
+            for (boolean lineQueued : queued) {
+                anyQueued |= lineQueued;
+            }
         }
+        dirtyLines.clear(); // Only the queued flags are used in parallel mode
 
-        // Find cells that are consistent across all possible fills
-        CellState[] merged = mergeLineFills(fills);
+        return status();
+    }
 
-        // Update the line if we found new information
-        if (!Arrays.equals(line, merged)) {
+    /**
+     * Deduces all the queued lines in a range at the same time on the pool, then applies the results.
+     * 
+     * @param from The first line in the range, where rows come first followed by columns.
+     * @param to   The line after the last line in the range.
+     */
+    private void runPhase(int from, int to) {
+        List<Integer> lines = new ArrayList<>();
+        for (int line = from; line < to; line++) {
+            if (queued[line]) {
+                queued[line] = false;
+                lines.add(line);
+            }
+        }
+        linesProcessed += lines.size();
+
+        CellState[][] results = new CellState[lines.size()][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int k = 0; k < lines.size(); k++) {
+            final int task = k;
+            tasks.add(pool.submit(() -> {
+                results[task] = deduce(lines.get(task));
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
 
-            setColumn(index, merged);
+        // Apply the results in line order, so the outcome doesn't depend on which line finished first
+        for (int k = 0; k < lines.size() && !contradiction; k++) {
+            if (results[k] != null) {
+                apply(lines.get(k), results[k]);
+            }
+        }
+    }
 
-            return true;
+    /**
+     * Works out the new state of a line without changing the grid.
+     * 
+     * @param line The index of the line, where rows come first followed by columns.
+     * @return The new state of the line, or null if nothing new can be deduced.
+     */
+    private CellState[] deduce(int line) {
+        int rows = puzzle.getRowConstraints().length;
+        if (line < rows) {
+            return deduceLine(getRow(line), puzzle.getRowConstraints()[line]);
         }
+        return deduceLine(getColumn(line - rows), puzzle.getColumnConstraints()[line - rows]);
+    }
 
-        return false;
+    /**
+     * Writes the new state of a line to the grid.
+     * 
+     * @param line     The index of the line, where rows come first followed by columns.
+     * @param newLine  The new state of the line.
+     */
+    private void apply(int line, CellState[] newLine) {
+        int rows = puzzle.getRowConstraints().length;
+        if (line < rows) {
+            setRow(line, newLine);
+        } else {
+            setColumn(line - rows, newLine);
+        }
+    }
+
+    private boolean processColumns(int index) {
+        CellState[] merged = deduce(puzzle.getRowConstraints().length + index);
+        if (merged == null) {
+            return false;
+        }
+        setColumn(index, merged);
+        return true;
     }
 
     private boolean processRows(int index) {
-        CellState[] line = getRow(index);
-        BlockConstraint[] constraints = puzzle.getRowConstraints()[index];
+        CellState[] merged = deduce(index);
+        if (merged == null) {
+            return false;
+        }
+        setRow(index, merged);
+        return true;
+    }
 
-        // Skip if already solved
+    /**
+     * Deduces as much as possible about a single line from its constraints.
+     * 
+     * @param line        The current state of the line.
+     * @param constraints The constraints for the line.
+     * @return The new state of the line, or null if nothing new can be deduced.
+     */
+    private CellState[] deduceLine(CellState[] line, BlockConstraint[] constraints) {
+        // If the line is already solved, any unknown cells must be empty
         if (puzzle.isLineSolved(line, constraints)) {
-            int rowCounter = 0;
-            for (CellState item : line) {
-                if (item.equals(CellState.UNKNOWN)) {
-                    puzzle.setCellState(index, rowCounter, CellState.EMPTY);
+            CellState[] filled = line.clone();
+            for (int i = 0; i < filled.length; i++) {
+                if (filled[i].equals(CellState.UNKNOWN)) {
+                    filled[i] = CellState.EMPTY;
                 }
-                rowCounter++;
             }
-            return false;
+            return Arrays.equals(line, filled) ? null : filled;
         }
 
-        // Generate all possible fills for this line
-        List<CellState[]> fills = generateLineFills(constraints, line);
-
-        // If no valid fills, puzzle is unsolvable
-        if (fills.isEmpty()) {
-            return false;
+        // Find cells that are consistent across all possible fills
+        if (cacheLookups != null) {
+            cacheLookups.increment();
         }
+        CellState[] merged = lineCache.solve(constraints, line, lineSolver);
 
-        // Find cells that are consistent across all possible fills
-        CellState[] merged = mergeLineFills(fills);
+        // If no valid fills, puzzle is unsolvable from here
+        if (merged == null) {
+            contradiction = true;
+            return null;
+        }
 
         // Update the line if we found new information
         if (!Arrays.equals(line, merged)) {
-
-            setRow(index, merged);
-
-            return true;
+            return merged;
         }
 
-        return false;
+        return null;
     }
 
     private void TEH6_DEBUG_LINE(CellState[] line, boolean isCol) {
@@ -230,14 +536,21 @@ public class Solver {
 
     /**
      * Sets the state of the specified row in the puzzle.
+     * Each column with a cell that changes is queued to be processed again.
+     * The row is written in one go without adding to the player's move history.
      * 
      * @param rowIndex The index of the row to update.
      * @param newRow   The new state of the row.
      */
     private void setRow(int rowIndex, CellState[] newRow) {
+        int rows = puzzle.getRowConstraints().length;
         for (int j = 0; j < newRow.length; j++) {
-            puzzle.setCellState(rowIndex, j, newRow[j]);
+            if (puzzle.getCellState(rowIndex, j) != newRow[j]) {
+                markDirty(rows + j);
+                cellsFixed++;
+            }
         }
+        puzzle.setRowStates(rowIndex, newRow, false);
     }
 
     /**
@@ -257,14 +570,20 @@ public class Solver {
 
     /**
      * Sets the state of the specified column in the puzzle.
+     * Each row with a cell that changes is queued to be processed again.
+     * The column is written in one go without adding to the player's move history.
      * 
      * @param colIndex The index of the column to update.
      * @param newCol   The new state of the column.
      */
     private void setColumn(int colIndex, CellState[] newCol) {
         for (int i = 0; i < newCol.length; i++) {
-            puzzle.setCellState(i, colIndex, newCol[i]);
+            if (puzzle.getCellState(i, colIndex) != newCol[i]) {
+                markDirty(i);
+                cellsFixed++;
+            }
         }
+        puzzle.setColumnStates(colIndex, newCol, false);
     }
 
     /**
@@ -272,11 +591,13 @@ public class Solver {
      * index.
      * If there are any discrepancies, the cell at that index will be set to
      * UNKNOWN.
+     * The line solver gives the same result without building the fills, so this
+     * is only kept as a reference to check it against.
      * 
      * @param fills A list of possible valid fills for a line.
      * @return A merged line with the most deducible values.
      */
-    private CellState[] mergeLineFills(List<CellState[]> fills) {
+    CellState[] mergeLineFills(List<CellState[]> fills) {
         if (fills.isEmpty()) {
             return new CellState[0];
         }
@@ -327,7 +648,7 @@ public class Solver {
      * @param currentLine The current state of the line.
      * @return A list of possible valid fills for the line.
      */
-    private List<CellState[]> generateLineFills(BlockConstraint[] constraints, CellState[] currentLine) {
+    List<CellState[]> generateLineFills(BlockConstraint[] constraints, CellState[] currentLine) {
         List<CellState[]> result = new ArrayList<>();
         if (constraints == null || constraints.length == 0) {
             // Handle empty constraints case
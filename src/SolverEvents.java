@@ -0,0 +1,129 @@
+package src;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the solving pipeline, so that a recording shows where solving time goes
+ * next to the GC and allocation events of the same period. Record them with, for example,
+ * java -XX:StartFlightRecording:filename=solve.jfr ... and open the file in JDK Mission Control.
+ * When no recording is running the events are not committed, and cost next to nothing.
+ */
+final class SolverEvents {
+    private SolverEvents() {
+    }
+
+    // The types of the events made many times in each solve, one per propagation pass (including those inside
+    // every probe) and one per guess. Their makers check whether a recording has the event on before creating one,
+    // rather than allocating an event that is never committed.
+    static final EventType PROPAGATION = EventType.getEventType(PropagationEvent.class);
+    static final EventType GUESS = EventType.getEventType(GuessEvent.class);
+
+    @Name("nonogram.Solve")
+    @Label("Solve")
+    @Description("One solve of a puzzle, by the guesser or the SAT backend")
+    @Category({"Nonogram", "Solver"})
+    @StackTrace(false)
+    static class SolveEvent extends Event {
+        @Label("Puzzle")
+        String puzzleName;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int columns;
+
+        @Label("Solver")
+        String solver;
+
+        @Label("Status")
+        String status;
+
+        @Label("Cells Determined")
+        int cellsDetermined;
+
+        @Label("Guesses")
+        int guesses;
+    }
+
+    @Name("nonogram.Propagation")
+    @Label("Propagation Pass")
+    @Description("Deduction run until no queued lines are left, including the deduction run inside each probe")
+    @Category({"Nonogram", "Solver"})
+    @StackTrace(false)
+    static class PropagationEvent extends Event {
+        @Label("Puzzle")
+        String puzzleName;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int columns;
+
+        @Label("Lines Processed")
+        int linesProcessed;
+
+        @Label("Cells Fixed")
+        int cellsFixed;
+
+        @Label("Status")
+        String status;
+    }
+
+    @Name("nonogram.Guess")
+    @Label("Guess")
+    @Description("One fill of a line tried by the guesser, from applying it until it solved the puzzle or was backtracked")
+    @Category({"Nonogram", "Solver"})
+    @StackTrace(false)
+    static class GuessEvent extends Event {
+        @Label("Puzzle")
+        String puzzleName;
+
+        @Label("Line Index")
+        @Description("The row, or the column if Column is set")
+        int lineIndex;
+
+        @Label("Column")
+        boolean column;
+
+        @Label("Fills")
+        @Description("The number of fills of the line to choose from")
+        int fills;
+
+        @Label("Placements Considered")
+        @Description("The block placements tried to generate the fills of the line")
+        long placementsConsidered;
+
+        @Label("Backtracked")
+        boolean backtracked;
+
+        @Label("Status")
+        String status;
+    }
+
+    @Name("nonogram.PuzzleLoad")
+    @Label("Puzzle Load")
+    @Description("Reading and parsing a puzzle file")
+    @Category({"Nonogram", "Loading"})
+    @StackTrace(false)
+    static class PuzzleLoadEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Puzzle")
+        String puzzleName;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int columns;
+    }
+}
@@ -0,0 +1,77 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how the parallel solve mode scales with the number of threads.
+ * Generates large random puzzles, then solves each of them by deduction with pools of
+ * 1 up to N threads, checking every result against the one-line-at-a-time solve.
+ *
+ * Usage: java -cp "lib/*":out src.SolverScalingBenchmark [size] [puzzles] [maxThreads]
+ */
+public class SolverScalingBenchmark {
+    private static final int ROUNDS = 3; // Each timing is the best of this many solves
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int puzzleCount = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<Nonogram> puzzles = new ArrayList<>();
+        for (int i = 0; i < puzzleCount; i++) {
+            // Two colour grids with 60% of the cells filled
+            PuzzleGenerator generator = new PuzzleGenerator(1006 + i);
+            generator.setSize(size, size);
+            generator.setDensity(0.6);
+            generator.setColours(2);
+            puzzles.add(generator.generate());
+        }
+
+        // Solve one line at a time first, to warm up and to have results to compare against
+        List<CellState[][]> expected = new ArrayList<>();
+        long sequentialTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            expected.clear();
+            long start = System.nanoTime();
+            for (Nonogram puzzle : puzzles) {
+                expected.add(solve(puzzle, null));
+            }
+            sequentialTime = Math.min(sequentialTime, System.nanoTime() - start);
+        }
+        System.out.printf("%d puzzles of %dx%d, %d processors available%n", puzzleCount, size, size,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("sequential: %8.1f ms%n", sequentialTime / 1e6);
+
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < puzzles.size(); i++) {
+                    CellState[][] grid = solve(puzzles.get(i), pool);
+                    if (!Arrays.deepEquals(grid, expected.get(i))) {
+                        throw new IllegalStateException("Parallel result differs from sequential on puzzle " + i);
+                    }
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            System.out.printf("%2d threads: %8.1f ms  (speed-up %.2fx)%n", threads, best / 1e6,
+                    sequentialTime / (double) best);
+        }
+    }
+
+    /**
+     * Solves a fresh copy of a puzzle by deduction and returns the grid.
+     */
+    private static CellState[][] solve(Nonogram puzzle, ForkJoinPool pool) {
+        puzzle.resetGrid();
+        Solver solver = new Solver(puzzle, new LineCache());
+        solver.setPool(pool);
+        solver.solve();
+        return puzzle.getGridCopy();
+    }
+}
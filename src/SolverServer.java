@@ -0,0 +1,357 @@
+package src;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Solves puzzles sent over HTTP, so other programs can use the solver without starting a JVM for each puzzle.
+ * It runs on the JDK's built-in HTTP server, handling each request on its own virtual thread
+ * (or a daemon thread on JVMs older than Java 21), which reads the puzzle, waits for the solve and answers.
+ * The solves themselves run on a fixed number of platform threads: virtual threads take turns only when they
+ * block or yield, so a long solve on one could hold up every other request.
+ *
+ * POST /solve takes a puzzle in the same JSON format as the puzzle files, and answers with the grid
+ * in the format saveMoves writes, plus the status, guesses and time of the solve.
+ * The status code is 200 if the solve finished, 422 if the puzzle has no solution, 504 if the deadline passed
+ * first, 400 if the puzzle couldn't be read, and 503 if the server is too busy or shutting down.
+ * GET /health answers 200 while the server is taking requests.
+ *
+ * Each request has a deadline, which covers both waiting for a turn and solving. It is the server's default
+ * unless the request asks for a shorter one with ?timeout=MILLIS, and is never longer than the server's maximum.
+ * A timeout which isn't a whole number of milliseconds, at least 1, gets 400.
+ * Only a fixed number of puzzles are solved at once, and only a fixed number more may wait for a turn;
+ * a request which would go over that is turned away with 503 straight away rather than queued without limit.
+ *
+ * Usage: java -cp "lib/*":out src.SolverServer [port]
+ * The server only listens on the loopback address, so only programs on the same machine can reach it.
+ */
+public class SolverServer {
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    private static final long STOP_GRACE_MILLIS = 500; // How long a solve past its deadline has to answer with what it found
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExecutorService solvers; // A platform thread for each puzzle that may be solved at once
+    private final Semaphore admitted; // A permit for each request that may be solving or waiting to solve
+    private final int capacity; // The number of admission permits
+    private final Set<CancellationToken> running = ConcurrentHashMap.newKeySet(); // Solves to cancel on shutdown
+    private volatile boolean stopping;
+    private boolean stopped;
+    private long defaultDeadlineMillis = 10_000;
+    private long maxDeadlineMillis = 60_000;
+    private int maxGuesses = new SolveOptions().getMaxGuesses();
+
+    /**
+     * Creates a server on a loopback port, which starts taking requests when start() is called.
+     *
+     * @param port          The port to listen on, or 0 for any free port.
+     * @param maxConcurrent The most puzzles to solve at once, at least 1.
+     * @param maxWaiting    The most requests which may wait for a turn to solve, on top of those solving.
+     * @throws IOException if the port can't be bound
+     */
+    public SolverServer(int port, int maxConcurrent, int maxWaiting) throws IOException {
+        if (maxConcurrent < 1 || maxWaiting < 0) {
+            throw new IllegalArgumentException("Need at least one solve at a time and no negative queue, not "
+                    + maxConcurrent + " and " + maxWaiting);
+        }
+        AtomicInteger solverCount = new AtomicInteger();
+        this.solvers = Executors.newFixedThreadPool(maxConcurrent, task -> {
+            Thread thread = new Thread(task, "solver-server-solve-" + solverCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.capacity = maxConcurrent + maxWaiting;
+        this.admitted = new Semaphore(capacity);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = VirtualThreads.newThreadPerTaskExecutor("solver-server");
+        server.setExecutor(executor);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    /**
+     * @param defaultDeadlineMillis The deadline for requests which don't ask for one (10 seconds by default).
+     */
+    public void setDefaultDeadlineMillis(long defaultDeadlineMillis) {
+        this.defaultDeadlineMillis = defaultDeadlineMillis;
+    }
+
+    /**
+     * @param maxDeadlineMillis The longest deadline a request may ask for (60 seconds by default).
+     */
+    public void setMaxDeadlineMillis(long maxDeadlineMillis) {
+        this.maxDeadlineMillis = maxDeadlineMillis;
+    }
+
+    /**
+     * @param maxGuesses The most guesses each solve may make (the same as SolveOptions by default).
+     */
+    public void setMaxGuesses(int maxGuesses) {
+        this.maxGuesses = maxGuesses;
+    }
+
+    /**
+     * Starts taking requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server gracefully: new requests are turned away with 503, and the requests already admitted
+     * are given the grace period to finish. Any still solving after that are cancelled and answered
+     * with what they had found, then the server closes. Stopping a server that has already stopped does nothing.
+     *
+     * @param graceMillis How long to wait for the requests already admitted.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void stop(long graceMillis) throws InterruptedException {
+        if (stopped) {
+            return;
+        }
+        stopping = true;
+        // Taking every admission permit means every admitted request has finished
+        if (!admitted.tryAcquire(capacity, graceMillis, TimeUnit.MILLISECONDS)) {
+            for (CancellationToken token : running) {
+                token.cancel();
+            }
+            admitted.tryAcquire(capacity, 5, TimeUnit.SECONDS);
+        }
+        server.stop(0);
+        executor.shutdown();
+        solvers.shutdown();
+        stopped = true;
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        if (stopping) {
+            send(exchange, 503, "stopping");
+        } else {
+            send(exchange, 200, "ok");
+        }
+    }
+
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                send(exchange, 405, "Puzzles must be sent with POST");
+                return;
+            }
+            long deadlineMillis;
+            try {
+                deadlineMillis = deadlineMillis(exchange.getRequestURI());
+            } catch (NumberFormatException e) {
+                send(exchange, 400, "The timeout must be a positive number of milliseconds");
+                return;
+            }
+            if (stopping || !admitted.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, stopping ? "The server is shutting down" : "The server is busy");
+                return;
+            }
+            try {
+                solve(exchange, start, deadlineMillis);
+            } finally {
+                admitted.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads, waits for a turn to solve, and solves the puzzle in an admitted request, then sends the answer.
+     */
+    private void solve(HttpExchange exchange, long start, long deadlineMillis) throws IOException {
+        Nonogram puzzle;
+        try {
+            puzzle = new PuzzleLoader().parsePuzzle(readBody(exchange.getRequestBody()));
+        } catch (JSONException | IllegalArgumentException e) {
+            send(exchange, 400, "The puzzle could not be read: " + e.getMessage());
+            return;
+        } catch (BodyTooLargeException e) {
+            send(exchange, 413, "Puzzles must be at most " + MAX_BODY_BYTES + " bytes");
+            return;
+        }
+
+        // The solve itself runs on one of the solver threads, as a long solve on a virtual thread
+        // would hold on to its carrier thread and hold up the other requests
+        CancellationToken token = new CancellationToken();
+        AtomicBoolean started = new AtomicBoolean(); // Set by whichever comes first, the solve or the deadline
+        running.add(token);
+        SolveResult result;
+        try {
+            Future<SolveResult> future = solvers.submit(() -> {
+                long remainingMillis = deadlineMillis - (System.nanoTime() - start) / 1_000_000;
+                if (!started.compareAndSet(false, true) || remainingMillis <= 0 || token.isCancelled()) {
+                    return null; // The deadline passed, or the server stopped, while waiting for a turn
+                }
+                SolveOptions options = new SolveOptions();
+                options.setMaxGuesses(maxGuesses);
+                options.setTimeLimitMillis(remainingMillis);
+                options.setCancellationToken(token);
+                return new Guesser(puzzle).solve(options);
+            });
+            long remainingMillis = deadlineMillis - (System.nanoTime() - start) / 1_000_000;
+            try {
+                result = future.get(Math.max(remainingMillis, 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (started.compareAndSet(false, true)) {
+                    // Still waiting behind other solves, so it is dropped rather than holding up the answer
+                    future.cancel(false);
+                    send(exchange, 504, "The deadline passed while waiting for a turn to solve");
+                    return;
+                }
+                // The solve has the same deadline, so it should be about to stop and answer with what it found
+                try {
+                    result = future.get(STOP_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException stillRunning) {
+                    token.cancel();
+                    future.cancel(true);
+                    send(exchange, 504, "The deadline passed before the solve finished");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.cancel();
+            send(exchange, 503, "The server is shutting down");
+            return;
+        } catch (ExecutionException e) {
+            send(exchange, 500, "The solver failed: " + e.getCause());
+            return;
+        } finally {
+            running.remove(token);
+        }
+        if (result == null) {
+            send(exchange, token.isCancelled() ? 503 : 504, token.isCancelled() ? "The server is shutting down"
+                    : "The deadline passed while waiting for a turn to solve");
+            return;
+        }
+
+        JSONObject json = puzzle.movesToJson();
+        json.put("status", result.getStatus().name());
+        json.put("guesses", result.getGuesses());
+        json.put("millis", result.getElapsedMillis());
+        int code;
+        switch (result.getStatus()) {
+            case CONTRADICTION:
+                code = 422;
+                break;
+            case TIMED_OUT:
+                code = 504;
+                break;
+            case CANCELLED:
+                code = 503;
+                break;
+            default:
+                code = 200;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, code, json.toString());
+    }
+
+    /**
+     * Gets a request's deadline: the timeout it asks for, if any, no longer than the maximum.
+     *
+     * @throws NumberFormatException if the timeout is not a whole number of milliseconds, at least 1
+     */
+    private long deadlineMillis(URI uri) {
+        long deadline = defaultDeadlineMillis;
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("timeout=")) {
+                    deadline = Long.parseLong(parameter.substring("timeout=".length()));
+                    if (deadline < 1) {
+                        throw new NumberFormatException("The timeout must be at least 1 millisecond, not " + deadline);
+                    }
+                }
+            }
+        }
+        return Math.min(deadline, maxDeadlineMillis);
+    }
+
+    /**
+     * Reads a request body as UTF-8 text, up to the size limit.
+     */
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                throw new BodyTooLargeException();
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        }
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int processors = Runtime.getRuntime().availableProcessors();
+        SolverServer solverServer = new SolverServer(port, processors, 4 * processors);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                solverServer.stop(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        solverServer.start();
+        System.out.printf("Solving puzzles at http://localhost:%d/solve (%s threads)%n", solverServer.getPort(),
+                VirtualThreads.isSupported() ? "virtual" : "platform");
+    }
+
+    /**
+     * Thrown when a request body is bigger than the server accepts.
+     */
+    private static class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
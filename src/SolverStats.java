@@ -0,0 +1,213 @@
+package src;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the solvers do and how long each phase takes.
+ * Every solve run with options gets its own stats, returned in its SolveResult, which are added to the
+ * stats of the whole JVM when it finishes. Those are registered as a platform MBean, so a running JVM
+ * can be watched with JConsole or jcmd. The counters are LongAdders, which threads of a parallel solve
+ * can add to at once without contending.
+ */
+public class SolverStats implements SolverStatsMXBean {
+    /**
+     * The things counted. The times are in nanoseconds.
+     */
+    public enum Counter {
+        SOLVES, // solves finished
+        LINES_PROCESSED, // lines taken off the deduction queue, not counting the ones inside probes
+        LINE_CACHE_HITS, // lines found in the line cache
+        LINE_SOLVES, // lines the line solver had to solve
+        PLACEMENTS_CONSIDERED, // block placements tried while generating the fills of a line to guess on
+        CELLS_FIXED_BY_DEDUCTION,
+        CELLS_FIXED_BY_PROBING,
+        CELLS_FIXED_BY_GUESSING, // unknown cells filled in by a guessed line
+        CELLS_FIXED_BY_SAT,
+        GUESSES, // line fills tried by the guesser
+        BACKTRACKS, // guesses rolled back
+        CONTRADICTIONS, // deductions that found a line with no valid fill, not counting the ones inside probes
+        DEDUCTION_NANOS,
+        PROBING_NANOS,
+        SEARCH_NANOS, // time spent guessing, including deduction after each guess
+        SAT_NANOS
+    }
+
+    private static final String OBJECT_NAME = "nonogram:type=SolverStats";
+    private static SolverStats global;
+
+    private final LongAdder[] counters;
+
+    /**
+     * Creates stats with every counter at zero.
+     */
+    public SolverStats() {
+        counters = new LongAdder[Counter.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Gets the stats of every solve in this JVM, registering them as a platform MBean the first time.
+     *
+     * @return the stats shared by the whole JVM
+     */
+    public static synchronized SolverStats global() {
+        if (global == null) {
+            global = new SolverStats();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(global, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                // Another copy of these classes got there first, so these stats just won't be visible over JMX
+            }
+        }
+        return global;
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter The counter to add to.
+     * @param amount  The amount to add.
+     */
+    void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Adds one to a counter.
+     *
+     * @param counter The counter to add to.
+     */
+    void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * Adds every counter of other stats to these.
+     *
+     * @param other The stats to add.
+     */
+    void addAll(SolverStats other) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i].add(other.counters[i].sum());
+        }
+    }
+
+    /**
+     * @param counter the counter to read
+     * @return the current value of the counter
+     */
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @return the current value of every counter
+     */
+    public Map<Counter, Long> snapshot() {
+        Map<Counter, Long> snapshot = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            snapshot.put(counter, get(counter));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+    }
+
+    @Override
+    public long getSolves() {
+        return get(Counter.SOLVES);
+    }
+
+    @Override
+    public long getLinesProcessed() {
+        return get(Counter.LINES_PROCESSED);
+    }
+
+    @Override
+    public long getLineCacheHits() {
+        return get(Counter.LINE_CACHE_HITS);
+    }
+
+    @Override
+    public long getLineSolves() {
+        return get(Counter.LINE_SOLVES);
+    }
+
+    @Override
+    public long getPlacementsConsidered() {
+        return get(Counter.PLACEMENTS_CONSIDERED);
+    }
+
+    @Override
+    public long getCellsFixedByDeduction() {
+        return get(Counter.CELLS_FIXED_BY_DEDUCTION);
+    }
+
+    @Override
+    public long getCellsFixedByProbing() {
+        return get(Counter.CELLS_FIXED_BY_PROBING);
+    }
+
+    @Override
+    public long getCellsFixedByGuessing() {
+        return get(Counter.CELLS_FIXED_BY_GUESSING);
+    }
+
+    @Override
+    public long getCellsFixedBySat() {
+        return get(Counter.CELLS_FIXED_BY_SAT);
+    }
+
+    @Override
+    public long getGuesses() {
+        return get(Counter.GUESSES);
+    }
+
+    @Override
+    public long getBacktracks() {
+        return get(Counter.BACKTRACKS);
+    }
+
+    @Override
+    public long getContradictions() {
+        return get(Counter.CONTRADICTIONS);
+    }
+
+    @Override
+    public long getDeductionMillis() {
+        return get(Counter.DEDUCTION_NANOS) / 1_000_000;
+    }
+
+    @Override
+    public long getProbingMillis() {
+        return get(Counter.PROBING_NANOS) / 1_000_000;
+    }
+
+    @Override
+    public long getSearchMillis() {
+        return get(Counter.SEARCH_NANOS) / 1_000_000;
+    }
+
+    @Override
+    public long getSatMillis() {
+        return get(Counter.SAT_NANOS) / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,44 @@
+package src;
+
+/**
+ * The solver counters of the whole JVM, as shown by JConsole or jcmd under nonogram:type=SolverStats.
+ * Times are in milliseconds. The phases overlap: deduction run while probing or searching also counts as deduction.
+ */
+public interface SolverStatsMXBean {
+    long getSolves();
+
+    long getLinesProcessed();
+
+    long getLineCacheHits();
+
+    long getLineSolves();
+
+    long getPlacementsConsidered();
+
+    long getCellsFixedByDeduction();
+
+    long getCellsFixedByProbing();
+
+    long getCellsFixedByGuessing();
+
+    long getCellsFixedBySat();
+
+    long getGuesses();
+
+    long getBacktracks();
+
+    long getContradictions();
+
+    long getDeductionMillis();
+
+    long getProbingMillis();
+
+    long getSearchMillis();
+
+    long getSatMillis();
+
+    /**
+     * Sets every counter back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,414 @@
+package src;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Loads puzzles in the same format as PuzzleLoader, reading them straight from a stream with the javax.json
+ * event parser. PuzzleLoader reads a whole file into a string, parses it into JSON objects and then copies
+ * the blocks through lists, while this builds each line's constraints as the blocks are read, collecting
+ * them in arrays of counts and colours which are reused from line to line.
+ * It can also read NDJSON files, which hold many puzzles, one per line, for loading puzzles in bulk.
+ *
+ * Malformed JSON, or a puzzle missing its name, rows or columns, throws a JsonException
+ * (JsonParsingException for malformed JSON, with where it went wrong).
+ */
+public class StreamingPuzzleLoader {
+    private static final JsonParserFactory PARSERS = Json.createParserFactory(null);
+
+    // The blocks of the line being read, reused for every line
+    private int[] counts = new int[16];
+    private CellState[] states = new CellState[16];
+
+    /**
+     * Receives the puzzles read from an NDJSON stream, one line at a time.
+     */
+    public interface PuzzleHandler {
+        /**
+         * Called with each puzzle read.
+         *
+         * @param line   The line the puzzle was on, counting from 1.
+         * @param puzzle The puzzle.
+         */
+        void onPuzzle(int line, Nonogram puzzle);
+
+        /**
+         * Called when a line can't be read as a puzzle. Reading carries on with the next line
+         * unless this throws, which it does by default.
+         *
+         * @param line  The line, counting from 1.
+         * @param error Why the line couldn't be read.
+         */
+        default void onError(int line, RuntimeException error) {
+            throw new JsonException("Line " + line + ": " + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Loads a puzzle from a JSON file.
+     *
+     * @param filePath The path to the JSON file.
+     * @return the puzzle in the file
+     * @throws IOException if the file can't be read
+     */
+    public Nonogram loadPuzzle(String filePath) throws IOException {
+        SolverEvents.PuzzleLoadEvent event = new SolverEvents.PuzzleLoadEvent();
+        event.begin();
+        Nonogram puzzle;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(filePath)))) {
+            puzzle = loadPuzzle(in);
+        }
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.puzzleName = puzzle.getName();
+            event.rows = puzzle.getRowConstraints().length;
+            event.columns = puzzle.getColumnConstraints().length;
+            event.commit();
+        }
+        return puzzle;
+    }
+
+    /**
+     * Loads a puzzle from a stream holding one JSON puzzle. The stream is not closed.
+     *
+     * @param in The stream to read.
+     * @return the puzzle read
+     */
+    public Nonogram loadPuzzle(InputStream in) {
+        try (JsonParser parser = PARSERS.createParser(new LineInputStream(in, false))) {
+            return readPuzzle(parser);
+        }
+    }
+
+    /**
+     * Loads every puzzle in an NDJSON file, stopping at the first line which isn't a puzzle.
+     *
+     * @param filePath The path to the NDJSON file.
+     * @return the puzzles, in the order of the lines they were on
+     * @throws IOException if the file can't be read
+     */
+    public List<Nonogram> loadAll(String filePath) throws IOException {
+        List<Nonogram> puzzles = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+            forEachPuzzle(in, (line, puzzle) -> puzzles.add(puzzle));
+        }
+        return puzzles;
+    }
+
+    /**
+     * Reads an NDJSON stream, passing each puzzle to the handler as soon as its line has been read,
+     * so a stream of any length can be processed one puzzle at a time. Blank lines are skipped.
+     * The stream is not closed.
+     *
+     * @param in      The stream to read, with one JSON puzzle on each line.
+     * @param handler Receives each puzzle, and each line that isn't one.
+     * @throws IOException if the stream can't be read
+     */
+    public void forEachPuzzle(InputStream in, PuzzleHandler handler) throws IOException {
+        LineInputStream lines = new LineInputStream(in, true);
+        try {
+            for (int line = 1; lines.startLine(); line++) {
+                if (lines.skipBlankLine()) {
+                    continue;
+                }
+                Nonogram puzzle;
+                try (JsonParser parser = PARSERS.createParser(lines)) {
+                    puzzle = readPuzzle(parser);
+                } catch (JsonException | IllegalArgumentException e) {
+                    lines.finishLine();
+                    handler.onError(line, e);
+                    continue;
+                }
+                lines.finishLine();
+                handler.onPuzzle(line, puzzle);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads one puzzle object from the parser.
+     */
+    private Nonogram readPuzzle(JsonParser parser) {
+        expect(parser, JsonParser.Event.START_OBJECT);
+        String name = null;
+        Map<CellState, Color> colourMap = null;
+        BlockConstraint[][] rowConstraints = null;
+        BlockConstraint[][] columnConstraints = null;
+        while (nextKey(parser)) {
+            switch (parser.getString()) {
+                case "name":
+                    expect(parser, JsonParser.Event.VALUE_STRING);
+                    name = parser.getString();
+                    break;
+                case "states":
+                    colourMap = readStates(parser);
+                    break;
+                case "rows":
+                    rowConstraints = readConstraints(parser);
+                    break;
+                case "columns":
+                    columnConstraints = readConstraints(parser);
+                    break;
+                default:
+                    skipValue(parser);
+            }
+        }
+        if (name == null || rowConstraints == null || columnConstraints == null) {
+            throw new JsonException("The puzzle has no " + (name == null ? "name" : rowConstraints == null ? "rows" : "columns"));
+        }
+
+        int rows = rowConstraints.length;
+        int columns = columnConstraints.length;
+        if (colourMap == null) {
+            return new Nonogram(name, rowConstraints, columnConstraints, rows, columns);
+        }
+        return new Nonogram(name, colourMap, rowConstraints, columnConstraints, rows, columns);
+    }
+
+    /**
+     * Reads the custom state colours, skipping any that aren't recognised with the same warning as PuzzleLoader.
+     */
+    private Map<CellState, Color> readStates(JsonParser parser) {
+        expect(parser, JsonParser.Event.START_OBJECT);
+        Map<CellState, Color> colourMap = new TreeMap<>();
+        while (nextKey(parser)) {
+            String state = parser.getString();
+            expect(parser, JsonParser.Event.VALUE_STRING);
+            try {
+                colourMap.put(Enum.valueOf(CellState.class, state), Color.decode(parser.getString()));
+            } catch (IllegalArgumentException e) {
+                System.out.println(
+                        "Argument Error: Some of the custom colours could not be recognised, so the image may display incorrectly. Check the JSON input.");
+            }
+        }
+        return colourMap;
+    }
+
+    /**
+     * Reads an array of lines, each an array of blocks with a count and an optional colour (COLOUR_1 if missing).
+     */
+    private BlockConstraint[][] readConstraints(JsonParser parser) {
+        expect(parser, JsonParser.Event.START_ARRAY);
+        List<BlockConstraint[]> lines = new ArrayList<>();
+        JsonParser.Event event;
+        while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+            check(parser, event, JsonParser.Event.START_ARRAY);
+            int blocks = 0;
+            while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+                check(parser, event, JsonParser.Event.START_OBJECT);
+                int count = -1;
+                CellState state = CellState.COLOUR_1;
+                while (nextKey(parser)) {
+                    String key = parser.getString();
+                    if (key.equals("count")) {
+                        expect(parser, JsonParser.Event.VALUE_NUMBER);
+                        count = parser.getInt();
+                    } else if (key.equals("color")) {
+                        expect(parser, JsonParser.Event.VALUE_STRING);
+                        state = Enum.valueOf(CellState.class, parser.getString());
+                    } else {
+                        skipValue(parser);
+                    }
+                }
+                if (count < 0) {
+                    throw new JsonParsingException("A block has no count", parser.getLocation());
+                }
+                if (blocks == counts.length) {
+                    counts = Arrays.copyOf(counts, blocks * 2);
+                    states = Arrays.copyOf(states, blocks * 2);
+                }
+                counts[blocks] = count;
+                states[blocks] = state;
+                blocks++;
+            }
+            BlockConstraint[] line = new BlockConstraint[blocks];
+            for (int i = 0; i < blocks; i++) {
+                line[i] = new BlockConstraint(counts[i], states[i]);
+            }
+            lines.add(line);
+        }
+        return lines.toArray(new BlockConstraint[0][]);
+    }
+
+    /**
+     * Moves to the next key of an object.
+     *
+     * @return true if there is another key, or false at the end of the object
+     */
+    private static boolean nextKey(JsonParser parser) {
+        JsonParser.Event event = parser.next();
+        if (event == JsonParser.Event.END_OBJECT) {
+            return false;
+        }
+        check(parser, event, JsonParser.Event.KEY_NAME);
+        return true;
+    }
+
+    /**
+     * Skips a value, including everything inside it if it is an object or array.
+     */
+    private static void skipValue(JsonParser parser) {
+        int depth = 0;
+        do {
+            JsonParser.Event event = parser.next();
+            if (event == JsonParser.Event.START_OBJECT || event == JsonParser.Event.START_ARRAY) {
+                depth++;
+            } else if (event == JsonParser.Event.END_OBJECT || event == JsonParser.Event.END_ARRAY) {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private static void expect(JsonParser parser, JsonParser.Event expected) {
+        check(parser, parser.next(), expected);
+    }
+
+    private static void check(JsonParser parser, JsonParser.Event event, JsonParser.Event expected) {
+        if (event != expected) {
+            throw new JsonParsingException("Expected " + expected + " but found " + event, parser.getLocation());
+        }
+    }
+
+    /**
+     * A view of a stream which ends at the end of each line, so a new parser can be started on each line
+     * of an NDJSON stream without copying the line into a string. It has its own buffer, so it never
+     * reads the underlying stream byte by byte. When not split into lines, it passes the whole stream through.
+     * Closing it leaves the underlying stream open.
+     */
+    private static class LineInputStream extends InputStream {
+        private final InputStream source;
+        private final boolean splitLines;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+        private boolean endOfLine; // Whether the end of the current line has been read
+        private boolean endOfInput;
+
+        LineInputStream(InputStream source, boolean splitLines) {
+            this.source = source;
+            this.splitLines = splitLines;
+        }
+
+        /**
+         * Starts reading the next line.
+         *
+         * @return false if there are no more lines
+         */
+        boolean startLine() {
+            endOfLine = false;
+            return fill();
+        }
+
+        /**
+         * Skips spaces at the start of the line, and the line itself if there is nothing else on it.
+         *
+         * @return true if the line was blank
+         */
+        boolean skipBlankLine() {
+            while (fill()) {
+                byte next = buffer[position];
+                if (next == '\n') {
+                    position++;
+                    return true;
+                } else if (next != ' ' && next != '\t' && next != '\r') {
+                    return false;
+                }
+                position++;
+            }
+            return true;
+        }
+
+        /**
+         * Skips whatever is left of the current line once its puzzle has been read.
+         */
+        void finishLine() {
+            while (read() != -1) {
+                // Only whitespace should be left, which the parser didn't need to read
+            }
+        }
+
+        /**
+         * Makes sure the buffer has a byte to read, unless the stream has ended.
+         */
+        private boolean fill() {
+            if (position < limit) {
+                return true;
+            }
+            if (endOfInput) {
+                return false;
+            }
+            try {
+                int read = source.read(buffer);
+                if (read <= 0) {
+                    endOfInput = true;
+                    return false;
+                }
+                position = 0;
+                limit = read;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int read() {
+            if (endOfLine || !fill()) {
+                return -1;
+            }
+            byte next = buffer[position++];
+            if (splitLines && next == '\n') {
+                endOfLine = true;
+                return -1;
+            }
+            return next & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (endOfLine || !fill()) {
+                return -1;
+            }
+            int end = Math.min(limit, position + length);
+            int copied = end - position;
+            if (splitLines) {
+                for (int i = position; i < end; i++) {
+                    if (buffer[i] == '\n') {
+                        copied = i - position;
+                        endOfLine = true;
+                        break;
+                    }
+                }
+            }
+            System.arraycopy(buffer, position, bytes, offset, copied);
+            position += endOfLine ? copied + 1 : copied;
+            return copied == 0 && endOfLine ? -1 : copied;
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream belongs to the caller
+        }
+    }
+}
@@ -58,6 +58,64 @@ public class TestNonogram {
         assertArrayEquals(testPuzzle.getGrid(), this.gridWithMove1);
     }
 
+    // test setting a whole row as one move, which is undone in one go
+    @Test
+    public void testSetRowStatesRecorded() {
+        testPuzzle.initialiseGrid();
+
+        assertEquals(2, testPuzzle.setRowStates(0, new CellState[] {CellState.COLOUR_2, CellState.COLOUR_1}, true));
+        assertArrayEquals(new CellState[] {CellState.COLOUR_2, CellState.COLOUR_1}, testPuzzle.getGrid()[0]);
+
+        assertTrue(testPuzzle.undo());
+        assertArrayEquals(testPuzzle.getGrid(), this.emptyGrid);
+        assertFalse(testPuzzle.undo());
+    }
+
+    // test that solver writes to a column do not add to the move history
+    @Test
+    public void testSetColumnStatesNotRecorded() {
+        testPuzzle.initialiseGrid();
+
+        assertEquals(1, testPuzzle.setColumnStates(1, new CellState[] {CellState.UNKNOWN, CellState.COLOUR_1}, false));
+        assertArrayEquals(testPuzzle.getGrid(), this.gridWithMove1);
+        assertFalse(testPuzzle.undo());
+    }
+
+    // test rolling back to nested marks, and keeping the changes made since a mark as one move
+    @Test
+    public void testMarkRollbackAndKeep() {
+        testPuzzle.initialiseGrid();
+
+        int outer = testPuzzle.mark();
+        testPuzzle.setColumnStates(1, new CellState[] {CellState.UNKNOWN, CellState.COLOUR_1}, false);
+        int inner = testPuzzle.mark();
+        testPuzzle.setRowStates(0, new CellState[] {CellState.COLOUR_2, CellState.COLOUR_1}, false);
+        testPuzzle.rollback(inner);
+        assertArrayEquals(testPuzzle.getGrid(), this.gridWithMove1);
+
+        inner = testPuzzle.mark();
+        testPuzzle.setRowStates(0, new CellState[] {CellState.COLOUR_2, CellState.COLOUR_1}, false);
+        testPuzzle.keepChanges(outer);
+
+        assertTrue(testPuzzle.undo());
+        assertArrayEquals(testPuzzle.getGrid(), this.emptyGrid);
+        assertFalse(testPuzzle.undo());
+    }
+
+    // test setting a scattered set of cells as one move
+    @Test
+    public void testSetCellStates() {
+        testPuzzle.initialiseGrid();
+
+        int changed = testPuzzle.setCellStates(new int[] {1, 0, 0}, new int[] {1, 0, 1},
+                new CellState[] {CellState.COLOUR_1, CellState.COLOUR_2, CellState.COLOUR_1}, true);
+        assertEquals(3, changed);
+        assertArrayEquals(testPuzzle.getGrid(), this.solvedGrid);
+
+        testPuzzle.undo();
+        assertArrayEquals(testPuzzle.getGrid(), this.emptyGrid);
+    }
+
     // test reset grid
     @Test
     public void testResetGrid() {
@@ -112,6 +170,24 @@ public class TestNonogram {
         assertArrayEquals(testPuzzle.getGrid(), this.emptyGrid);
     }
 
+    // test that undo puts back a cell changed several times in one move, along with unrecorded changes made after it
+    @Test
+    public void testUndoMoveWithRepeatedChanges() {
+        testPuzzle.initialiseGrid();
+        testPuzzle.setCellState(1, 1, CellState.COLOUR_1);
+
+        testPuzzle.setCellState(0, 0, CellState.COLOUR_1);
+        testPuzzle.setRowStates(0, new CellState[] {CellState.COLOUR_2, CellState.COLOUR_1}, false);
+        assertArrayEquals(testPuzzle.getGrid(), this.solvedGrid);
+
+        testPuzzle.undo();
+        assertArrayEquals(testPuzzle.getGrid(), this.gridWithMove1);
+
+        assertTrue(testPuzzle.resetMoves());
+        assertArrayEquals(testPuzzle.getGrid(), this.emptyGrid);
+        assertFalse(testPuzzle.resetMoves());
+    }
+
     // test validate coordinates with normal (valid) data
     @Test
     public void testValidateCoordinatesNormal() {
@@ -178,6 +254,27 @@ public class TestNonogram {
         assertTrue(testPuzzle.isLineSolved(line, lineConstraint));
     }
 
+    // test isLineSolved with a block that is too long, followed by a block of another colour
+    @Test
+    public void testIsLineSolvedBlockTooLong() {
+        CellState[] line = {CellState.COLOUR_1, CellState.COLOUR_1, CellState.COLOUR_2};
+        BlockConstraint[] lineConstraint = { new BlockConstraint(1, CellState.COLOUR_1), new BlockConstraint(1, CellState.COLOUR_2) };
+
+        assertFalse(testPuzzle.isLineSolved(line, lineConstraint));
+    }
+
+    // test isColumnSolved reads the columns of the grid
+    @Test
+    public void testIsColumnSolved() {
+        initialiseAndSolveGrid();
+
+        assertTrue(testPuzzle.isColumnSolved(0));
+        assertTrue(testPuzzle.isColumnSolved(1));
+
+        testPuzzle.setCellState(0, 1, CellState.EMPTY);
+        assertFalse(testPuzzle.isColumnSolved(1));
+    }
+
     // test isSolved with a normal (solved) puzzle
     @Test
     public void testIsSolvedNormal() {
@@ -196,6 +293,38 @@ public class TestNonogram {
         assertFalse(testPuzzle.isSolved());
     }
 
+    // test that isSolved follows the grid as cells are set, undone and reset
+    @Test
+    public void testIsSolvedTracksChanges() {
+        initialiseAndSolveGrid();
+        assertTrue(testPuzzle.isSolved());
+
+        testPuzzle.undo();
+        assertFalse(testPuzzle.isSolved());
+
+        testPuzzle.setColumnStates(1, new CellState[] {CellState.COLOUR_1, CellState.COLOUR_1}, false);
+        assertTrue(testPuzzle.isSolved());
+
+        testPuzzle.resetGrid();
+        assertFalse(testPuzzle.isSolved());
+    }
+
+    // test that a copy starts with the same grid but changes separately, without the move history
+    @Test
+    public void testCopy() {
+        initialiseAndSolveGrid();
+        Nonogram copy = testPuzzle.copy();
+        assertArrayEquals(testPuzzle.getGrid(), copy.getGrid());
+        assertTrue(copy.isSolved());
+
+        copy.undo(); // Nothing to undo, as the moves that solved the original are not copied
+        assertTrue(copy.isSolved());
+
+        copy.setCellState(0, 0, CellState.EMPTY);
+        assertFalse(copy.isSolved());
+        assertTrue(testPuzzle.isSolved());
+    }
+
     // test saveMoves (compare file with expected)
     @Test
     public void testSaveMoves() throws IOException {
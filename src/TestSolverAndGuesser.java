@@ -2,11 +2,42 @@ package src;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.json.JsonException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -173,6 +204,145 @@ public class TestSolverAndGuesser {
         assertEquals(result, expectedOutput);
     }
 
+    /**
+     * Test that the line solver gives the same result as merging every fill from backtrackFill().
+     * Uses random lines with up to 3 colours, partly filled in from a random valid fill,
+     * so that both lines with and without valid fills are checked.
+     */
+    @Test
+    public void testLineSolverMatchesMergedFills() {
+        Random random = new Random(1006);
+        LineSolver lineSolver = new LineSolver();
+        CellState[] colours = {CellState.COLOUR_1, CellState.COLOUR_2, CellState.COLOUR_3};
+
+        for (int test = 0; test < 2000; test++) {
+            int length = 1 + random.nextInt(12);
+
+            // Build a random solved line and take its constraints
+            CellState[] solution = new CellState[length];
+            List<BlockConstraint> blocks = new ArrayList<>();
+            for (int i = 0; i < length; i++) {
+                solution[i] = random.nextInt(2) == 0 ? CellState.EMPTY : colours[random.nextInt(1 + test % 3)];
+                if (solution[i] != CellState.EMPTY) {
+                    if (i > 0 && solution[i - 1] == solution[i]) {
+                        BlockConstraint last = blocks.get(blocks.size() - 1);
+                        blocks.set(blocks.size() - 1, new BlockConstraint(last.getLength() + 1, last.getState()));
+                    } else {
+                        blocks.add(new BlockConstraint(1, solution[i]));
+                    }
+                }
+            }
+            BlockConstraint[] constraints = blocks.toArray(new BlockConstraint[0]);
+
+            // Reveal some cells, sometimes with the wrong state
+            CellState[] line = new CellState[length];
+            for (int i = 0; i < length; i++) {
+                int reveal = random.nextInt(10);
+                if (reveal < 6) {
+                    line[i] = CellState.UNKNOWN;
+                } else if (reveal < 9) {
+                    line[i] = solution[i];
+                } else {
+                    line[i] = random.nextBoolean() ? CellState.EMPTY : colours[random.nextInt(3)];
+                }
+            }
+
+            // Lines with no constraints are a special case in generateLineFills(), so are skipped
+            if (constraints.length == 0) {
+                continue;
+            }
+
+            List<CellState[]> fills = testSolvableSolver.generateLineFills(constraints, line);
+            CellState[] expected = fills.isEmpty() ? null : testSolvableSolver.mergeLineFills(fills);
+
+            assertArrayEquals(expected, lineSolver.solve(constraints, line));
+            assertEquals(fills.size(), lineSolver.countFills(constraints, line));
+        }
+    }
+
+    /**
+     * Test that counting the fills of a long line with many blocks stops at Long.MAX_VALUE instead of overflowing.
+     * 100 blocks of 1 in 400 cells have C(301, 100) fills, which is far more than a long can hold.
+     */
+    @Test
+    public void testCountFillsSaturates() {
+        BlockConstraint[] constraints = new BlockConstraint[100];
+        Arrays.fill(constraints, new BlockConstraint(1, CellState.COLOUR_1));
+        CellState[] line = new CellState[400];
+        Arrays.fill(line, CellState.UNKNOWN);
+
+        assertEquals(Long.MAX_VALUE, new LineSolver().countFills(constraints, line));
+
+        // 2 blocks of 1 in 5 cells: C(4, 2) = 6
+        assertEquals(6, new LineSolver().countFills(Arrays.copyOf(constraints, 2), Arrays.copyOf(line, 5)));
+    }
+
+    /**
+     * Test the overlap stage with constraint 1,6 (same colour) with length 10, given an empty line.
+     * The 6 block must cover cells 4-7, and nothing else is forced.
+     */
+    @Test
+    public void testOverlap() {
+        BlockConstraint[] testConstraints = {new BlockConstraint(1, CellState.COLOUR_1), new BlockConstraint(6, CellState.COLOUR_1)};
+
+        CellState[] currentLine = new CellState[10];
+        Arrays.fill(currentLine, CellState.UNKNOWN);
+
+        CellState[] expectedOutput = {CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN, CellState.COLOUR_1,
+                                    CellState.COLOUR_1, CellState.COLOUR_1, CellState.COLOUR_1, CellState.UNKNOWN, CellState.UNKNOWN};
+
+        assertArrayEquals(expectedOutput, new LineSolver().overlap(testConstraints, currentLine));
+    }
+
+    /**
+     * Test that a line filled by the overlap stage (different colours need no gap) is not passed on
+     * to the full line solver, but a line with undecided cells is.
+     */
+    @Test
+    public void testLineSolverStages() {
+        LineSolver lineSolver = new LineSolver();
+        BlockConstraint[] fullConstraints = {new BlockConstraint(2, CellState.COLOUR_2), new BlockConstraint(3, CellState.COLOUR_1)};
+        CellState[] fullLine = {CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN};
+
+        CellState[] expectedOutput = {CellState.COLOUR_2, CellState.COLOUR_2, CellState.COLOUR_1, CellState.COLOUR_1, CellState.COLOUR_1};
+        assertArrayEquals(expectedOutput, lineSolver.solve(fullConstraints, fullLine));
+        assertEquals(1, lineSolver.getOverlapSettled());
+        assertEquals(0, lineSolver.getFullSolves());
+
+        BlockConstraint[] partialConstraints = {new BlockConstraint(3, CellState.COLOUR_1)};
+        lineSolver.solve(partialConstraints, fullLine);
+        assertEquals(1, lineSolver.getOverlapSettled());
+        assertEquals(1, lineSolver.getFullSolves());
+    }
+
+    /**
+     * Test that identical lines share a cache entry, and that the least recently used line is evicted when the cache is full.
+     */
+    @Test
+    public void testLineCache() {
+        LineCache cache = new LineCache(2);
+        LineSolver lineSolver = new LineSolver();
+        BlockConstraint[] constraints = {new BlockConstraint(3, CellState.COLOUR_1)};
+        CellState[] line = {CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN};
+        CellState[] otherLine = {CellState.COLOUR_1, CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN};
+        CellState[] shortLine = {CellState.UNKNOWN, CellState.UNKNOWN, CellState.UNKNOWN};
+
+        CellState[] expectedOutput = {CellState.UNKNOWN, CellState.COLOUR_1, CellState.COLOUR_1, CellState.UNKNOWN};
+        assertArrayEquals(expectedOutput, cache.solve(constraints, line, lineSolver));
+        assertArrayEquals(expectedOutput, cache.solve(new BlockConstraint[] {new BlockConstraint(3, CellState.COLOUR_1)}, line.clone(), lineSolver));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.solve(constraints, otherLine, lineSolver);
+        cache.solve(constraints, shortLine, lineSolver);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+
+        // The first line was the least recently used, so has to be solved again
+        cache.solve(constraints, line, lineSolver);
+        assertEquals(4, cache.getMisses());
+    }
+
     /**
      * Test that the solver accurately solves a puzzle which is solvable without guessing.
      */
@@ -186,6 +356,24 @@ public class TestSolverAndGuesser {
         assertArrayEquals(testSolvablePuzzle.getGrid(), nonogramTester.solvedAndEmptyGrid);
     }
 
+    /**
+     * Test that solving the rows and columns in parallel gives the same grid as solving one line at a time.
+     */
+    @Test
+    public void testSolveParallelMatchesSequential() throws IOException {
+        Nonogram sequentialPuzzle = new PuzzleLoader().loadPuzzle("puzzles/colour_cat.json");
+        new Solver(sequentialPuzzle).solve();
+
+        Nonogram parallelPuzzle = new PuzzleLoader().loadPuzzle("puzzles/colour_cat.json");
+        Solver parallelSolver = new Solver(parallelPuzzle);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        parallelSolver.setPool(pool);
+        parallelSolver.solve();
+        pool.shutdown();
+
+        assertArrayEquals(sequentialPuzzle.getGrid(), parallelPuzzle.getGrid());
+    }
+
     /**
      * Ensure that the solver does not accurately solve a puzzle which is unsolvable without guessing.
      */
@@ -213,6 +401,770 @@ public class TestSolverAndGuesser {
         assertArrayEquals(testUnsolvablePuzzle.getGrid(), this.solvedUnsolvableGrid);
     }
 
+    /**
+     * Test that deduction reports a contradiction for a puzzle with no solution,
+     * using rows 2,2 and columns 1,1 (so the rows need 4 filled cells but the columns only allow 2).
+     */
+    @Test
+    public void testPropagateContradiction() {
+        BlockConstraint[][] rowConstraints = {{new BlockConstraint(2, CellState.COLOUR_1)}, {new BlockConstraint(2, CellState.COLOUR_1)}};
+        BlockConstraint[][] columnConstraints = {{new BlockConstraint(1, CellState.COLOUR_1)}, {new BlockConstraint(1, CellState.COLOUR_1)}};
+        Nonogram impossiblePuzzle = new Nonogram("Impossible", rowConstraints, columnConstraints, 2, 2);
+
+        assertEquals(SolveStatus.CONTRADICTION, new Solver(impossiblePuzzle).propagate());
+    }
+
+    /**
+     * Test that the guesser reports a puzzle with no solution as a contradiction, rather than running out of guesses.
+     */
+    @Test
+    public void testGuessUnsolvableSmiler() throws IOException {
+        Nonogram unsolvableSmiler = new PuzzleLoader().loadPuzzle("puzzles/unsolvable_smiler.json");
+        Guesser guesser = new Guesser(unsolvableSmiler);
+
+        assertFalse(guesser.solve());
+        assertEquals(SolveStatus.CONTRADICTION, guesser.getStatus());
+    }
+
+    /**
+     * Test the status of a puzzle solved by guessing.
+     */
+    @Test
+    public void testGuessStatus() {
+        testGuesser.solve();
+
+        assertEquals(SolveStatus.SOLVED, testGuesser.getStatus());
+    }
+
+    /**
+     * Test that a solve by guessing, including the guesses that were backtracked, is undone as a single move.
+     */
+    @Test
+    public void testGuessUndoneAsOneMove() {
+        testGuesser.solve();
+        assertArrayEquals(solvedUnsolvableGrid, testUnsolvablePuzzle.getGrid());
+
+        assertTrue(testUnsolvablePuzzle.undo());
+        assertArrayEquals(emptyUnsolvableGrid, testUnsolvablePuzzle.getGrid());
+        assertFalse(testUnsolvablePuzzle.undo());
+    }
+
+    /**
+     * Test that deduction and probing after a player's move are undone on their own, leaving the player's move,
+     * and that a solve which finds nothing leaves no move to undo.
+     */
+    @Test
+    public void testSolveUndoneSeparatelyFromPlayerMove() throws IOException {
+        Nonogram puzzle = new PuzzleLoader().loadPuzzle("puzzles/smiler.json");
+        Nonogram solved = puzzle.copy();
+        new Solver(solved).propagate();
+        puzzle.setCellState(0, 0, solved.getCellState(0, 0));
+        CellState[][] afterMove = puzzle.getGridCopy();
+
+        new Solver(puzzle).propagate();
+        assertTrue(puzzle.undo());
+        assertArrayEquals(afterMove, puzzle.getGrid());
+
+        new Prober(puzzle, new LineCache()).probe();
+        assertTrue(puzzle.undo());
+        assertArrayEquals(afterMove, puzzle.getGrid());
+
+        Nonogram stuck = solved.copy(); // Already as far as deduction goes
+        new Solver(stuck).propagate();
+        assertFalse(stuck.undo());
+
+        assertTrue(puzzle.undo());
+        assertFalse(puzzle.undo());
+    }
+
+    /**
+     * Test that searching the guesses in parallel finds a solution to a puzzle with several,
+     * and that a pool with one worker finds the same solution as searching without a pool.
+     */
+    @Test
+    public void testGuessInParallel() throws IOException {
+        Nonogram sequential = new PuzzleLoader().loadPuzzle("puzzles/multi_checks.json");
+        Nonogram oneWorker = new PuzzleLoader().loadPuzzle("puzzles/multi_checks.json");
+        Nonogram fourWorkers = new PuzzleLoader().loadPuzzle("puzzles/multi_checks.json");
+        assertTrue(new Guesser(sequential).solve());
+
+        ForkJoinPool onePool = new ForkJoinPool(1);
+        ForkJoinPool fourPool = new ForkJoinPool(4);
+        try {
+            Guesser guesser = new Guesser(oneWorker);
+            guesser.setPool(onePool);
+            assertTrue(guesser.solve());
+            assertArrayEquals(sequential.getGrid(), oneWorker.getGrid());
+
+            guesser = new Guesser(fourWorkers);
+            guesser.setPool(fourPool);
+            assertTrue(guesser.solve());
+            assertTrue(fourWorkers.isSolved());
+
+            // A puzzle needing over a hundred guesses, where a copy of the grid for every fill would mean hundreds of copies
+            PuzzleGenerator generator = new PuzzleGenerator(4);
+            generator.setSize(20, 20);
+            generator.setDensity(0.45);
+            Nonogram generated = generator.generate();
+            guesser = new Guesser(generated);
+            guesser.setPool(fourPool);
+            SolveOptions options = new SolveOptions();
+            options.setMaxGuesses(Integer.MAX_VALUE);
+            SolveResult result = guesser.solve(options);
+            assertEquals(SolveStatus.SOLVED, result.getStatus());
+            assertTrue(result.getPeakGridCopies() < 64);
+        } finally {
+            onePool.shutdown();
+            fourPool.shutdown();
+        }
+
+        // The whole parallel solve is still undone as one move
+        assertTrue(fourWorkers.undo());
+        assertFalse(fourWorkers.undo());
+    }
+
+    /**
+     * Test that the portfolio solves a puzzle which needs more than line solving, and reports the winner.
+     * The whole solve is one move that can be undone.
+     */
+    @Test
+    public void testPortfolioSolves() throws IOException {
+        Nonogram player = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+        Portfolio.Result result = new Portfolio().solve(player);
+
+        assertEquals(SolveStatus.SOLVED, result.getStatus());
+        assertTrue(result.getWinner() != null);
+        assertTrue(player.isSolved());
+        assertTrue(player.undo());
+        assertFalse(player.isSolved());
+    }
+
+    /**
+     * Test that the portfolio reports a puzzle with no solution, rather than giving up, and leaves the grid as it was.
+     */
+    @Test
+    public void testPortfolioContradiction() throws IOException {
+        Nonogram unsolvableSmiler = new PuzzleLoader().loadPuzzle("puzzles/unsolvable_smiler.json");
+        CellState[][] before = unsolvableSmiler.getGridCopy();
+
+        assertEquals(SolveStatus.CONTRADICTION, new Portfolio().solve(unsolvableSmiler).getStatus());
+        assertArrayEquals(before, unsolvableSmiler.getGrid());
+        assertFalse(unsolvableSmiler.undo());
+    }
+
+    /**
+     * Test that a strategy which throws loses the race while the others carry on,
+     * and that the race stops at its time limit, cancelling the strategies still running.
+     */
+    @Test
+    public void testPortfolioTimeLimitAndFailures() throws InterruptedException {
+        Portfolio.Strategy failing = new Portfolio.Strategy("Failing", puzzle -> {
+            throw new IllegalStateException("Broken strategy");
+        });
+        Portfolio.Strategy lineSolving = new Portfolio.Strategy("Line solving", puzzle -> new Solver(puzzle).propagate());
+        Portfolio.Result result = new Portfolio(Arrays.asList(failing, lineSolving)).solve(testSolvablePuzzle);
+        assertEquals(SolveStatus.SOLVED, result.getStatus());
+        assertEquals("Line solving", result.getWinner());
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Portfolio.Strategy endless = new Portfolio.Strategy("Endless", puzzle -> {
+            while (!VirtualThreads.checkpoint()) {
+                Thread.onSpinWait();
+            }
+            stopped.countDown();
+            return SolveStatus.CANCELLED;
+        });
+        SolveOptions options = new SolveOptions();
+        options.setTimeLimitMillis(200);
+        long start = System.nanoTime();
+        result = new Portfolio(Arrays.asList(failing, endless)).solve(testUnsolvablePuzzle, options);
+        assertEquals(SolveStatus.TIMED_OUT, result.getStatus());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(emptyUnsolvableGrid, testUnsolvablePuzzle.getGrid());
+    }
+
+    /**
+     * Test that once a strategy wins, a strategy which would never finish on its own is cancelled.
+     */
+    @Test
+    public void testPortfolioCancelsLosers() throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+        Portfolio.Strategy endless = new Portfolio.Strategy("Endless", puzzle -> {
+            while (!VirtualThreads.checkpoint()) {
+                Thread.onSpinWait();
+            }
+            stopped.countDown();
+            return SolveStatus.CANCELLED;
+        });
+        Portfolio.Strategy lineSolving = new Portfolio.Strategy("Line solving", puzzle -> new Solver(puzzle).propagate());
+        Portfolio.Result result = new Portfolio(Arrays.asList(endless, lineSolving)).solve(testSolvablePuzzle);
+
+        assertEquals(SolveStatus.SOLVED, result.getStatus());
+        assertEquals("Line solving", result.getWinner());
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test the SAT solver against trying every assignment, on small random sets of clauses
+     * around the point where they stop being satisfiable.
+     */
+    @Test
+    public void testSatSolverMatchesBruteForce() {
+        Random random = new Random(1006);
+        for (int test = 0; test < 300; test++) {
+            int variables = 4 + random.nextInt(9);
+            int[][] clauses = new int[(int) (variables * 4.3)][];
+            SatSolver sat = new SatSolver();
+            for (int v = 0; v < variables; v++) {
+                sat.newVariable();
+            }
+            for (int c = 0; c < clauses.length; c++) {
+                clauses[c] = new int[1 + random.nextInt(3)];
+                for (int k = 0; k < clauses[c].length; k++) {
+                    clauses[c][k] = (1 + random.nextInt(variables)) * (random.nextBoolean() ? 1 : -1);
+                }
+                sat.addClause(clauses[c]);
+            }
+
+            boolean satisfiable = false;
+            for (int assignment = 0; assignment < 1 << variables && !satisfiable; assignment++) {
+                final int values = assignment;
+                satisfiable = Arrays.stream(clauses).allMatch(clause -> Arrays.stream(clause)
+                        .anyMatch(lit -> ((values >> (Math.abs(lit) - 1)) & 1) == (lit > 0 ? 1 : 0)));
+            }
+
+            SolveStatus status = sat.solve();
+            assertEquals(satisfiable ? SolveStatus.SOLVED : SolveStatus.CONTRADICTION, status);
+            if (satisfiable) {
+                for (int[] clause : clauses) {
+                    assertTrue(Arrays.stream(clause).anyMatch(lit -> sat.value(Math.abs(lit)) == (lit > 0)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the clause count only counts the clauses added, even after learnt clauses have been deleted,
+     * on the pigeonhole problem of putting 8 pigeons in 7 holes, which takes thousands of conflicts to refute.
+     */
+    @Test
+    public void testSatSolverClauseCount() {
+        int holes = 7;
+        SatSolver sat = new SatSolver();
+        int[][] pigeons = new int[holes + 1][holes];
+        for (int[] pigeon : pigeons) {
+            for (int h = 0; h < holes; h++) {
+                pigeon[h] = sat.newVariable();
+            }
+            sat.addClause(pigeon); // Each pigeon is in some hole
+        }
+        int added = pigeons.length;
+        for (int h = 0; h < holes; h++) {
+            for (int p = 0; p < pigeons.length; p++) {
+                for (int q = p + 1; q < pigeons.length; q++) {
+                    sat.addClause(-pigeons[p][h], -pigeons[q][h]); // No two pigeons share a hole
+                    added++;
+                }
+            }
+        }
+
+        assertEquals(added, sat.getClauseCount());
+        assertEquals(SolveStatus.CONTRADICTION, sat.solve());
+        assertTrue(sat.getLearntCount() < sat.getConflicts()); // Some learnt clauses were deleted
+        assertEquals(added, sat.getClauseCount());
+    }
+
+    /**
+     * Test that the SAT backend solves a puzzle line solving can't, and shows that one with no solution has none.
+     */
+    @Test
+    public void testSatBackend() throws IOException {
+        Nonogram player = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+        SatBackend backend = new SatBackend(player);
+        assertTrue(backend.solve());
+        assertTrue(player.isSolved());
+        assertTrue(player.undo());
+        assertArrayEquals(new PuzzleLoader().loadPuzzle("puzzles/player.json").getGrid(), player.getGrid());
+
+        SatBackend twoSolutions = new SatBackend(testUnsolvablePuzzle);
+        assertTrue(twoSolutions.solve());
+        assertTrue(testUnsolvablePuzzle.isSolved());
+
+        Nonogram unsolvableSmiler = new PuzzleLoader().loadPuzzle("puzzles/unsolvable_smiler.json");
+        SatBackend unsolvable = new SatBackend(unsolvableSmiler);
+        assertFalse(unsolvable.solve());
+        assertEquals(SolveStatus.CONTRADICTION, unsolvable.getStatus());
+    }
+
+    /**
+     * Test that a solve with options reports how many cells it found, how many guesses it made and how long it took,
+     * and stops with CANCELLED or TIMED_OUT when the token is cancelled or the time limit passes.
+     */
+    @Test
+    public void testSolveOptions() throws IOException {
+        SolveResult result = testGuesser.solve(new SolveOptions());
+        assertEquals(SolveStatus.SOLVED, result.getStatus());
+        assertEquals(4, result.getCellsDetermined());
+        assertEquals(4, result.getTotalCells());
+        assertEquals(1, result.getGuesses());
+
+        // The listener cancels the solve the first time it is called, before probing has finished
+        CancellationToken token = new CancellationToken();
+        List<SolveResult> progress = new ArrayList<>();
+        SolveOptions cancelled = new SolveOptions();
+        cancelled.setCancellationToken(token);
+        cancelled.setProgressIntervalMillis(0);
+        cancelled.setProgressListener(update -> {
+            progress.add(update);
+            token.cancel();
+        });
+        Nonogram player = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+        result = new Guesser(player).solve(cancelled);
+        assertEquals(SolveStatus.CANCELLED, result.getStatus());
+        assertEquals(1, progress.size());
+        assertEquals(SolveStatus.UNSOLVED, progress.get(0).getStatus());
+        assertTrue(result.getCellsDetermined() < result.getTotalCells());
+
+        // The listener takes longer than the time limit, so the next check finds the solve out of time
+        SolveOptions timed = new SolveOptions();
+        timed.setTimeLimitMillis(1);
+        timed.setProgressIntervalMillis(0);
+        timed.setProgressListener(update -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Nonogram timedPlayer = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+        assertEquals(SolveStatus.TIMED_OUT, new SatBackend(timedPlayer).solve(timed).getStatus());
+        assertFalse(timedPlayer.isSolved());
+    }
+
+    /**
+     * Test that a solve counts what each stage did, and adds its stats to those of the JVM, which are visible over JMX.
+     */
+    @Test
+    public void testSolverStats() throws Exception {
+        SolverStats global = SolverStats.global();
+        long solvesBefore = global.getSolves();
+        long linesBefore = global.getLinesProcessed();
+
+        Nonogram player = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+        SolverStats stats = new Guesser(player).solve(new SolveOptions()).getStats();
+        assertEquals(1, stats.getSolves());
+        assertEquals(400, stats.getCellsFixedByDeduction() + stats.getCellsFixedByProbing());
+        assertTrue(stats.getCellsFixedByProbing() > 0);
+        assertTrue(stats.getLinesProcessed() >= 40);
+        assertTrue(stats.getLineCacheHits() + stats.getLineSolves() <= stats.getLinesProcessed());
+        assertEquals(0, stats.getGuesses());
+
+        SolverStats guessed = testGuesser.solve(new SolveOptions()).getStats();
+        assertEquals(1, guessed.getGuesses());
+        assertEquals(2, guessed.getCellsFixedByGuessing());
+        assertEquals(0, guessed.getBacktracks());
+        assertTrue(guessed.getPlacementsConsidered() > 0);
+
+        // Solves left running by other tests could add to the JVM's stats too
+        assertTrue(global.getSolves() >= solvesBefore + 2);
+        assertTrue(global.getLinesProcessed() >= linesBefore + stats.getLinesProcessed());
+        long solves = (Long) ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName("nonogram:type=SolverStats"), "Solves");
+        assertTrue(solves >= solvesBefore + 2);
+    }
+
+    /**
+     * Test that loading and solving a puzzle emits flight recorder events for the load, the solve,
+     * the propagation passes and the guesses.
+     */
+    @Test
+    public void testFlightRecorderEvents() throws IOException {
+        Path file = Files.createTempFile("solve", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"nonogram.PuzzleLoad", "nonogram.Solve", "nonogram.Propagation", "nonogram.Guess"}) {
+                recording.enable(name);
+            }
+            recording.start();
+            new Guesser(new PuzzleLoader().loadPuzzle("puzzles/player.json")).solve();
+            testGuesser.solve();
+            recording.stop();
+            recording.dump(file);
+
+            Map<String, Integer> counts = new HashMap<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getThread().getJavaThreadId() != Thread.currentThread().getId()) {
+                    continue; // From a solve left running by another test
+                }
+                counts.merge(event.getEventType().getName(), 1, Integer::sum);
+                if (event.getEventType().getName().equals("nonogram.PuzzleLoad")) {
+                    assertEquals("puzzles/player.json", event.getString("path"));
+                    assertEquals(20, event.getInt("rows"));
+                }
+            }
+            assertEquals(Integer.valueOf(1), counts.get("nonogram.PuzzleLoad"));
+            assertEquals(Integer.valueOf(2), counts.get("nonogram.Solve"));
+            assertEquals(Integer.valueOf(1), counts.get("nonogram.Guess"));
+            assertTrue(counts.get("nonogram.Propagation") > 2);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test that solutions are counted up to the limit, with two differing witnesses when a puzzle is not unique,
+     * and that the puzzle being counted is not changed.
+     */
+    @Test
+    public void testSolutionCounter() throws IOException {
+        SolutionCounter.Result two = new SolutionCounter().count(testUnsolvablePuzzle);
+        assertEquals(2, two.getCount());
+        assertTrue(two.isAtLeast());
+        assertFalse(two.isUnique());
+        assertFalse(Arrays.deepEquals(two.getWitnesses().get(0), two.getWitnesses().get(1)));
+        assertArrayEquals(emptyUnsolvableGrid, testUnsolvablePuzzle.getGrid());
+
+        SolutionCounter.Result all = new SolutionCounter(10).count(testUnsolvablePuzzle);
+        assertEquals(2, all.getCount());
+        assertFalse(all.isAtLeast());
+        assertEquals("2 solutions", all.toString());
+
+        SolutionCounter.Result unique = new SolutionCounter().count(new PuzzleLoader().loadPuzzle("puzzles/player.json"));
+        assertTrue(unique.isUnique());
+        assertEquals(1, unique.getWitnesses().size());
+
+        SolutionCounter.Result none = new SolutionCounter().count(new PuzzleLoader().loadPuzzle("puzzles/unsolvable_smiler.json"));
+        assertEquals(0, none.getCount());
+        assertEquals("no solution", none.toString());
+    }
+
+    /**
+     * Test that generated puzzles are the same for the same seed, have the density, colours and difficulty
+     * asked for, follow the image they are made from, and load back from the JSON they are written to.
+     */
+    @Test
+    public void testPuzzleGenerator() throws IOException {
+        PuzzleGenerator generator = new PuzzleGenerator(7);
+        generator.setSize(30, 40);
+        generator.setDensity(0.3);
+        generator.setColours(4);
+        generator.setShape(PuzzleGenerator.Shape.BLOBS);
+        Nonogram puzzle = generator.generate();
+        PuzzleWriter writer = new PuzzleWriter();
+        assertTrue(writer.toJson(puzzle).similar(writer.toJson(generator.generate())));
+        assertEquals(30, puzzle.getRowConstraints().length);
+        assertEquals(40, puzzle.getColumnConstraints().length);
+        int filled = 0;
+        Map<CellState, Integer> colourCounts = new HashMap<>();
+        for (BlockConstraint[] row : puzzle.getRowConstraints()) {
+            for (BlockConstraint block : row) {
+                filled += block.getLength();
+                colourCounts.merge(block.getState(), block.getLength(), Integer::sum);
+            }
+        }
+        assertEquals(360, filled);
+        assertEquals(90, (int) colourCounts.get(CellState.COLOUR_4));
+
+        Path file = Files.createTempFile("generated", ".json");
+        try {
+            writer.writePuzzle(puzzle, file.toString());
+            Nonogram loaded = new PuzzleLoader().loadPuzzle(file.toString());
+            assertTrue(writer.toJson(puzzle).similar(writer.toJson(loaded)));
+            assertEquals(puzzle.getStateColour(CellState.COLOUR_3), loaded.getStateColour(CellState.COLOUR_3));
+        } finally {
+            Files.delete(file);
+        }
+
+        generator.setDifficulty(PuzzleGenerator.Difficulty.LINE_SOLVING);
+        assertEquals(PuzzleGenerator.Difficulty.LINE_SOLVING, PuzzleGenerator.classify(generator.generate()));
+
+        // Half of this image is black, so half filled puzzles made from it have the left half filled
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                image.setRGB(x, y, x < 32 ? 0x000000 : 0xFFFFFF);
+            }
+        }
+        PuzzleGenerator fromImage = new PuzzleGenerator(7);
+        fromImage.setSize(10, 10);
+        fromImage.setDensity(0.5);
+        fromImage.setShape(PuzzleGenerator.Shape.IMAGE);
+        fromImage.setImage(image);
+        for (BlockConstraint[] row : fromImage.generate().getRowConstraints()) {
+            assertEquals(1, row.length);
+            assertEquals(5, row[0].getLength());
+        }
+    }
+
+    /**
+     * Test that the batch solver finds puzzles by directory and glob, and writes a line for each of them,
+     * including those that can't be loaded or whose solve fails.
+     */
+    @Test
+    public void testBatchSolver() throws IOException, InterruptedException {
+        assertEquals(4, BatchSolver.findPuzzles("puzzles/colour_*.json").size());
+        assertEquals(15, BatchSolver.findPuzzles("puzzles").size());
+
+        // A negative block length loads, but the solver fails on it
+        Path failing = Files.createTempFile("batch", ".json");
+        Files.writeString(failing, "{\"name\": \"Negative\", \"rows\": [[{\"count\": -1}], [{\"count\": 1}]],"
+                + " \"columns\": [[{\"count\": 1}], [{\"count\": 1}]]}");
+        List<Path> files = Arrays.asList(Path.of("puzzles/player.json"), failing, Path.of("puzzles/unsolvable_smiler.json"),
+                Path.of("ourpuzzles/noname.json"));
+        StringWriter text = new StringWriter();
+        int solved;
+        try {
+            solved = new BatchSolver(2, new SolveOptions()).solveAll(files, BatchSolver.Format.CSV, new PrintWriter(text));
+        } finally {
+            Files.delete(failing);
+        }
+        assertEquals(1, solved);
+        String[] lines = text.toString().split("\\R");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].startsWith("file,name,status,"));
+        Map<String, String[]> byFile = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] values = lines[i].split(",", 8);
+            byFile.put(values[0], values);
+        }
+        assertEquals("SOLVED", byFile.get("puzzles/player.json")[2]);
+        assertEquals("0", byFile.get("puzzles/player.json")[5]); // Probing works on the puzzle itself, without a copy
+        assertEquals("CONTRADICTION", byFile.get("puzzles/unsolvable_smiler.json")[2]);
+        assertEquals("ERROR", byFile.get("ourpuzzles/noname.json")[2]);
+        assertEquals("ERROR", byFile.get(failing.toString())[2]);
+        assertTrue(byFile.get(failing.toString())[7].startsWith("The solver failed"));
+
+        assertEquals(".1/?2", BatchSolver.gridToString(new CellState[][] {{CellState.EMPTY, CellState.COLOUR_1},
+                {CellState.UNKNOWN, CellState.COLOUR_2}}));
+    }
+
+    /**
+     * Test the solving server on loopback: a solved puzzle comes back in the saved moves format,
+     * bad requests and deadlines get the right status codes, a busy server turns requests away,
+     * and stopping it cancels the solve still running.
+     */
+    @Test
+    public void testSolverServer() throws Exception {
+        SolverServer server = new SolverServer(0, 1, 0);
+        server.setMaxGuesses(Integer.MAX_VALUE);
+        server.start();
+        HttpClient client = HttpClient.newHttpClient();
+        String base = "http://localhost:" + server.getPort();
+        // A sparse random puzzle which takes the guesser far longer than any deadline here
+        PuzzleGenerator generator = new PuzzleGenerator(1);
+        generator.setSize(30, 30);
+        generator.setDensity(0.3);
+        String hard = new PuzzleWriter().toJson(generator.generate()).toString();
+        try {
+            HttpResponse<String> solved = post(client, base + "/solve", Files.readString(Path.of("puzzles/player.json")));
+            assertEquals(200, solved.statusCode());
+            assertEquals("SOLVED", new JSONObject(solved.body()).getString("status"));
+            Path moves = Files.createTempFile("server", "_moves.json");
+            try {
+                Files.writeString(moves, solved.body());
+                Nonogram player = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+                player.loadMoves(moves.toString());
+                assertTrue(player.isSolved());
+            } finally {
+                Files.delete(moves);
+            }
+
+            assertEquals(422, post(client, base + "/solve", Files.readString(Path.of("puzzles/unsolvable_smiler.json"))).statusCode());
+            assertEquals(400, post(client, base + "/solve", "{\"name\": \"No rows\"}").statusCode());
+            String smiler = Files.readString(Path.of("puzzles/smiler.json"));
+            for (String timeout : new String[] {"soon", "0", "-5"}) {
+                assertEquals(400, post(client, base + "/solve?timeout=" + timeout, smiler).statusCode());
+            }
+            assertEquals(405, client.send(HttpRequest.newBuilder(URI.create(base + "/solve")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            HttpResponse<String> late = post(client, base + "/solve?timeout=300", hard);
+            assertEquals(504, late.statusCode());
+            assertEquals("TIMED_OUT", new JSONObject(late.body()).getString("status"));
+
+            // While the hard puzzle is solving, the only slot is taken, so other requests are turned away.
+            // The hard puzzle is sent again if the small one got the slot first.
+            CompletableFuture<HttpResponse<String>> running = null;
+            int busy = 0;
+            for (long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10); busy != 503 && System.nanoTime() < end; ) {
+                if (running == null || running.isDone()) {
+                    running = client.sendAsync(HttpRequest.newBuilder(URI.create(base + "/solve?timeout=20000"))
+                            .POST(HttpRequest.BodyPublishers.ofString(hard)).build(), HttpResponse.BodyHandlers.ofString());
+                    Thread.sleep(50);
+                }
+                busy = post(client, base + "/solve", Files.readString(Path.of("puzzles/smiler.json"))).statusCode();
+            }
+            assertEquals(503, busy);
+
+            long stopStart = System.nanoTime();
+            server.stop(100);
+            assertTrue(System.nanoTime() - stopStart < TimeUnit.SECONDS.toNanos(10));
+            HttpResponse<String> cancelled = running.get(10, TimeUnit.SECONDS);
+            assertEquals(503, cancelled.statusCode());
+            assertEquals("CANCELLED", new JSONObject(cancelled.body()).getString("status"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Test that a request waiting behind a long solve is answered with 504 when its own deadline passes,
+     * rather than once the long solve has finished.
+     */
+    @Test
+    public void testSolverServerDeadlineWhileWaiting() throws Exception {
+        SolverServer server = new SolverServer(0, 1, 1);
+        server.setMaxGuesses(Integer.MAX_VALUE);
+        server.start();
+        HttpClient client = HttpClient.newHttpClient();
+        String base = "http://localhost:" + server.getPort();
+        PuzzleGenerator generator = new PuzzleGenerator(1);
+        generator.setSize(30, 30);
+        generator.setDensity(0.3);
+        String hard = new PuzzleWriter().toJson(generator.generate()).toString();
+        try {
+            CompletableFuture<HttpResponse<String>> running = client.sendAsync(
+                    HttpRequest.newBuilder(URI.create(base + "/solve?timeout=20000"))
+                            .POST(HttpRequest.BodyPublishers.ofString(hard)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Thread.sleep(200);
+            long waitStart = System.nanoTime();
+            HttpResponse<String> waiting = post(client, base + "/solve?timeout=100",
+                    Files.readString(Path.of("puzzles/smiler.json")));
+            assertEquals(504, waiting.statusCode());
+            assertTrue(System.nanoTime() - waitStart < TimeUnit.SECONDS.toNanos(5));
+            assertFalse(running.isDone());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String uri, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(uri)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Test that the streaming loader reads every puzzle the same as PuzzleLoader, rejects malformed ones,
+     * and reads NDJSON files line by line, reporting the lines that aren't puzzles.
+     */
+    @Test
+    public void testStreamingPuzzleLoader() throws IOException {
+        PuzzleWriter writer = new PuzzleWriter();
+        StreamingPuzzleLoader loader = new StreamingPuzzleLoader();
+        StringBuilder ndjson = new StringBuilder();
+        List<Path> files = BatchSolver.findPuzzles("puzzles");
+        for (Path file : files) {
+            JSONObject expected = writer.toJson(new PuzzleLoader().loadPuzzle(file.toString()));
+            assertTrue(file.toString(), expected.similar(writer.toJson(loader.loadPuzzle(file.toString()))));
+            ndjson.append(expected).append('\n');
+        }
+        for (String malformed : new String[] {"incorrectJson1", "incorrectJson2", "noCount", "nocolumns", "noname", "norows"}) {
+            try {
+                loader.loadPuzzle("ourpuzzles/" + malformed + ".json");
+                fail(malformed + " should not load");
+            } catch (JsonException e) {
+                // Expected
+            }
+        }
+
+        // A blank line and a line that isn't a puzzle in the middle, and no line break at the end
+        ndjson.append("\n{\"name\": \"No rows\"}\n");
+        ndjson.append(writer.toJson(new PuzzleLoader().loadPuzzle("puzzles/player.json")));
+        Path file = Files.createTempFile("puzzles", ".ndjson");
+        try {
+            Files.writeString(file, ndjson);
+            List<Integer> lines = new ArrayList<>();
+            List<Integer> errors = new ArrayList<>();
+            try (InputStream in = Files.newInputStream(file)) {
+                loader.forEachPuzzle(in, new StreamingPuzzleLoader.PuzzleHandler() {
+                    @Override
+                    public void onPuzzle(int line, Nonogram puzzle) {
+                        lines.add(line);
+                    }
+
+                    @Override
+                    public void onError(int line, RuntimeException error) {
+                        errors.add(line);
+                    }
+                });
+            }
+            assertEquals(files.size() + 1, lines.size());
+            assertEquals(Integer.valueOf(files.size() + 3), lines.get(files.size()));
+            assertEquals(List.of(files.size() + 2), errors);
+
+            try {
+                loader.loadAll(file.toString());
+                fail("The bad line should stop loadAll");
+            } catch (JsonException e) {
+                assertTrue(e.getMessage().startsWith("Line " + (files.size() + 2)));
+            }
+            Files.writeString(file, ndjson.substring(0, ndjson.indexOf("\n\n")));
+            assertEquals(files.size(), loader.loadAll(file.toString()).size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test that probing solves a puzzle deduction alone gets stuck on, without guessing,
+     * and ends on the same grid when the probes are run in parallel.
+     */
+    @Test
+    public void testProbeSolvesPlayer() throws IOException {
+        Nonogram deduced = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+        Nonogram probed = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+        Nonogram probedInParallel = new PuzzleLoader().loadPuzzle("puzzles/player.json");
+
+        assertEquals(SolveStatus.UNSOLVED, new Solver(deduced).propagate());
+        assertEquals(SolveStatus.SOLVED, new Prober(probed, new LineCache()).probe());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Prober prober = new Prober(probedInParallel, new LineCache());
+            prober.setPool(pool);
+            assertEquals(SolveStatus.SOLVED, prober.probe());
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(probed.getGrid(), probedInParallel.getGrid());
+    }
+
+    /**
+     * Test that probing leaves the cells of a puzzle with two solutions unknown, as neither state can be ruled out.
+     */
+    @Test
+    public void testProbeMultipleSolutions() {
+        assertEquals(SolveStatus.UNSOLVED, new Prober(testUnsolvablePuzzle, new LineCache()).probe());
+        assertArrayEquals(emptyUnsolvableGrid, testUnsolvablePuzzle.getGrid());
+    }
+
+    /**
+     * Test that a round of probing in parallel stops soon after the time limit, rather than probing every cell first,
+     * and that it only needs a few copies of the grid however many cells it probes.
+     */
+    @Test
+    public void testParallelProbingStopsAtTimeLimit() {
+        // A large sparse puzzle, where a full round of probes takes several seconds
+        PuzzleGenerator generator = new PuzzleGenerator(3);
+        generator.setSize(100, 100);
+        generator.setDensity(0.5);
+        Guesser guesser = new Guesser(generator.generate());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            guesser.setPool(pool);
+            SolveOptions options = new SolveOptions();
+            options.setTimeLimitMillis(300);
+            long start = System.nanoTime();
+            SolveResult result = guesser.solve(options);
+            assertEquals(SolveStatus.TIMED_OUT, result.getStatus());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(result.getPeakGridCopies() <= 2 * 4 * pool.getParallelism());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     /**
      * Setup some test grids to compare solver outputs with.
      * The puzzle these moves create is unsolvable without guessing, since it has multiple solutions.
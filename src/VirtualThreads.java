@@ -0,0 +1,94 @@
+package src;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Creates executors that start a new thread for each task, using virtual threads when the JVM has them.
+ * Virtual threads arrived in Java 21, so they are looked up by reflection, which lets the project
+ * still compile and run on older JVMs with ordinary daemon threads instead.
+ */
+public class VirtualThreads {
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual(); // Thread.isVirtual(), or null before Java 21
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor that runs each task on its own thread.
+     * The threads are virtual if the JVM supports them, and daemon platform threads otherwise.
+     *
+     * @param name The name given to the threads, followed by a number.
+     * @return The new executor, which should be shut down when no longer needed.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Gives other threads a turn, then checks whether the current thread has been interrupted.
+     * Virtual threads are not time sliced, so a long running task on one must call this now and then,
+     * or other virtual threads waiting for the same carrier thread would never get to run.
+     *
+     * @return true if the current thread has been interrupted and should stop
+     */
+    public static boolean checkpoint() {
+        if (isVirtual(Thread.currentThread())) {
+            // Thread.yield() can put a virtual thread straight back on its carrier, ahead of threads started
+            // from outside the carrier pool, which then never run when there is only one carrier (seen on Java 21).
+            // Parking for a moment puts it at the back of the queue instead.
+            LockSupport.parkNanos(1);
+        } else {
+            Thread.yield();
+        }
+        return Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * @return true if the thread is a virtual thread
+     */
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Thread.isVirtual() failed", e);
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if this JVM can create virtual threads
+     */
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}